@@ -0,0 +1,40 @@
+package com.ishaanraja.decentchat.benchmark;
+
+import java.security.KeyPair;
+
+import com.ishaanraja.decentchat.crypto.KeyUtils;
+import com.ishaanraja.decentchat.message.ChatMessage;
+import com.ishaanraja.decentchat.message.HistoryMessage;
+
+/**
+ * Creates the messages the benchmarks work on. Chat messages are only valid for the timestamp tolerance,
+ * so benchmarks that check validity create them again for every iteration.
+ */
+final class BenchmarkMessages {
+
+	private static KeyPair keyPair;
+
+	private BenchmarkMessages() {}
+
+	static synchronized KeyPair getKeyPair() throws Exception {
+		if(keyPair == null) {
+			keyPair = KeyUtils.generateKeyPair();
+		}
+		return keyPair;
+	}
+	static ChatMessage createChatMessage(String text) throws Exception {
+		KeyPair pair = getKeyPair();
+		return new ChatMessage(text, pair.getPublic(), pair.getPrivate());
+	}
+	static ChatMessage[] createChatMessages(int count) throws Exception {
+		ChatMessage[] messages = new ChatMessage[count];
+		for(int i=0;i<count;i++) {
+			messages[i] = createChatMessage("Benchmark message "+i);
+		}
+		return messages;
+	}
+	static HistoryMessage createHistoryMessage(int count) throws Exception {
+		return new HistoryMessage(createChatMessages(count));
+	}
+
+}
@@ -0,0 +1,34 @@
+package com.ishaanraja.decentchat.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Setup;
+
+import com.ishaanraja.decentchat.message.ChatMessage;
+
+/**
+ * Measures validating a received chat message, with and without its signature check.
+ */
+public class ChatMessageBenchmark extends BenchmarkSettings {
+
+	private ChatMessage message;
+
+	/**
+	 * Creates the message again for every iteration, so that it never falls outside the timestamp tolerance.
+	 */
+	@Setup(Level.Iteration)
+	public void setup() throws Exception {
+		message = BenchmarkMessages.createChatMessage("Benchmark message");
+	}
+
+	@Benchmark
+	public boolean isValid() {
+		return message.isValid();
+	}
+
+	@Benchmark
+	public boolean isValidExceptSignature() {
+		return message.isValidExceptSignature();
+	}
+
+}
@@ -0,0 +1,110 @@
+package com.ishaanraja.decentchat.benchmark;
+
+import java.util.Arrays;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Setup;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import com.ishaanraja.decentchat.message.BinaryCodec;
+import com.ishaanraja.decentchat.message.ChatMessage;
+import com.ishaanraja.decentchat.message.EncodedMessage;
+import com.ishaanraja.decentchat.message.HistoryMessage;
+import com.ishaanraja.decentchat.message.JsonCodec;
+import com.ishaanraja.decentchat.message.Message;
+
+/**
+ * Measures encoding messages for sending and decoding received messages, which is what every received
+ * message goes through before NodeManager.onMessageReceived() dispatches it.
+ *
+ * The baseline benchmarks decode JSON the way the client did before JsonCodec, as a reference for JsonCodec.decode().
+ */
+public class CodecBenchmark extends BenchmarkSettings {
+
+	private ChatMessage chat;
+	private HistoryMessage history;
+	private String chatJson;
+	private String historyJson;
+	private byte[] chatPayload;
+	private byte[] historyPayload;
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+		chat = BenchmarkMessages.createChatMessage("Benchmark message");
+		history = BenchmarkMessages.createHistoryMessage(32);
+		chatJson = chat.toJson();
+		historyJson = history.toJson();
+		chatPayload = payload(BinaryCodec.encode(chat));
+		historyPayload = payload(BinaryCodec.encode(history));
+	}
+	private static byte[] payload(byte[] frame) {
+		return Arrays.copyOfRange(frame, BinaryCodec.HEADER_SIZE, frame.length);
+	}
+
+	@Benchmark
+	public String chatToJson() {
+		return chat.toJson();
+	}
+
+	@Benchmark
+	public byte[] chatToBinary() {
+		return BinaryCodec.encode(chat);
+	}
+
+	@Benchmark
+	public byte[] chatToBothEncodings() {
+		EncodedMessage encoded = new EncodedMessage(chat);
+		encoded.getJsonLine();
+		return encoded.getBinaryFrame();
+	}
+
+	@Benchmark
+	public Message decodeChatJson() {
+		return JsonCodec.decode(chatJson);
+	}
+
+	@Benchmark
+	public Message decodeChatJsonBaseline() {
+		return decodeBaseline(chatJson);
+	}
+
+	@Benchmark
+	public Message decodeChatBinary() throws Exception {
+		return BinaryCodec.decode(chatPayload);
+	}
+
+	@Benchmark
+	public Message decodeHistoryJson() {
+		return JsonCodec.decode(historyJson);
+	}
+
+	@Benchmark
+	public Message decodeHistoryJsonBaseline() {
+		return decodeBaseline(historyJson);
+	}
+
+	@Benchmark
+	public Message decodeHistoryBinary() throws Exception {
+		return BinaryCodec.decode(historyPayload);
+	}
+
+	/**
+	 * The old decode path: DecentSocket parsed the line to read its type and version, NodeManager parsed it again 
+	 * to read its type, and a new Gson instance then bound the text to the message's class.
+	 */
+	private static Message decodeBaseline(String json) {
+		JsonObject socketObj = JsonParser.parseString(json).getAsJsonObject();
+		socketObj.get("type").getAsString();
+		if(socketObj.has("version")) {
+			socketObj.get("version").getAsString();
+		}
+		JsonObject messageObj = JsonParser.parseString(json).getAsJsonObject();
+		String type = messageObj.get("type").getAsString();
+		return new Gson().fromJson(json, JsonCodec.getMessageClass(type));
+	}
+
+}
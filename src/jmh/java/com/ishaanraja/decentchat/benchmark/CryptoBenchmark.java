@@ -0,0 +1,49 @@
+package com.ishaanraja.decentchat.benchmark;
+
+import java.security.PublicKey;
+import java.util.Base64;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Setup;
+
+import com.ishaanraja.decentchat.crypto.KeyUtils;
+import com.ishaanraja.decentchat.crypto.PublicKeyCache;
+import com.ishaanraja.decentchat.message.ChatMessage;
+
+/**
+ * Measures the public key operations of verifying a chat message: parsing the key from its Base 64 form and
+ * verifying the signature, directly and through the PublicKeyCache.
+ */
+public class CryptoBenchmark extends BenchmarkSettings {
+
+	private String pubKey;
+	private PublicKey publicKey;
+	private String digest;
+	private String signature;
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+		ChatMessage m = BenchmarkMessages.createChatMessage("Benchmark message");
+		pubKey = Base64.getEncoder().encodeToString(BenchmarkMessages.getKeyPair().getPublic().getEncoded());
+		publicKey = KeyUtils.getPublicKeyFromString(pubKey);
+		digest = m.getType()+m.getMessage()+m.getTimestamp()+m.getNonce();
+		signature = m.getSignature();
+	}
+
+	@Benchmark
+	public PublicKey getPublicKeyFromString() {
+		return KeyUtils.getPublicKeyFromString(pubKey);
+	}
+
+	@Benchmark
+	public boolean verify() throws Exception {
+		return KeyUtils.verify(digest, signature, publicKey);
+	}
+
+	@Benchmark
+	public boolean verifyCached() throws Exception {
+		return PublicKeyCache.verify(digest, signature, pubKey);
+	}
+
+}
@@ -0,0 +1,77 @@
+package com.ishaanraja.decentchat.benchmark;
+
+import java.time.Instant;
+import java.util.Base64;
+import java.util.Random;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Setup;
+
+import com.ishaanraja.decentchat.client.SignatureStore;
+import com.ishaanraja.decentchat.message.BinaryCodec;
+import com.ishaanraja.decentchat.message.ChatMessage;
+import com.ishaanraja.decentchat.message.JsonCodec;
+
+/**
+ * Measures the duplicate checks every received chat message goes through: finding its signature in the
+ * received bytes and looking the signature up in a SignatureStore holding an hour of messages.
+ */
+public class DuplicateBenchmark extends BenchmarkSettings {
+
+	private static final int STORED_SIGNATURES = 10000;
+
+	private SignatureStore store;
+	private byte[] seenSignature;
+	private byte[] unseenSignature;
+	private String seenSignatureText;
+	private byte[] chatLine;
+	private byte[] chatPayload;
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+		store = new SignatureStore();
+		Random random = new Random(1);
+		long now = Instant.now().getEpochSecond();
+		byte[] signature = new byte[256];
+		for(int i=0;i<STORED_SIGNATURES;i++) {
+			random.nextBytes(signature);
+			store.add(Base64.getEncoder().encodeToString(signature), now);
+		}
+		seenSignature = signature.clone();
+		seenSignatureText = Base64.getEncoder().encodeToString(seenSignature);
+		unseenSignature = new byte[256];
+		random.nextBytes(unseenSignature);
+		ChatMessage chat = BenchmarkMessages.createChatMessage("Benchmark message");
+		chatLine = chat.toJson().getBytes(JsonCodec.CHARSET);
+		byte[] frame = BinaryCodec.encode(chat);
+		chatPayload = new byte[frame.length-BinaryCodec.HEADER_SIZE];
+		System.arraycopy(frame, BinaryCodec.HEADER_SIZE, chatPayload, 0, chatPayload.length);
+	}
+
+	@Benchmark
+	public boolean containsSeen() {
+		return store.contains(seenSignature);
+	}
+
+	@Benchmark
+	public boolean containsUnseen() {
+		return store.contains(unseenSignature);
+	}
+
+	@Benchmark
+	public boolean containsSeenText() {
+		return store.contains(seenSignatureText);
+	}
+
+	@Benchmark
+	public byte[] peekJsonSignature() {
+		return JsonCodec.peekChatSignature(chatLine, chatLine.length);
+	}
+
+	@Benchmark
+	public byte[] peekBinarySignature() {
+		return BinaryCodec.peekChatSignature(chatPayload);
+	}
+
+}
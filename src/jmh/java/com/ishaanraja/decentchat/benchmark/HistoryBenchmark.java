@@ -0,0 +1,31 @@
+package com.ishaanraja.decentchat.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Setup;
+
+import com.ishaanraja.decentchat.client.MessageHistory;
+import com.ishaanraja.decentchat.config.DecentConfig;
+import com.ishaanraja.decentchat.message.ChatMessage;
+
+/**
+ * Measures answering a history request from the recently received messages, as DecentChatClient.getLastMessages() does.
+ */
+public class HistoryBenchmark extends BenchmarkSettings {
+
+	private MessageHistory history;
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+		history = new MessageHistory(DecentConfig.MESSAGE_HISTORY_LENGTH);
+		for(ChatMessage m: BenchmarkMessages.createChatMessages(DecentConfig.MESSAGE_HISTORY_LENGTH)) {
+			history.add(m);
+		}
+	}
+
+	@Benchmark
+	public ChatMessage[] getLastMessages() {
+		return history.getLast(DecentConfig.MESSAGE_HISTORY_LENGTH);
+	}
+
+}
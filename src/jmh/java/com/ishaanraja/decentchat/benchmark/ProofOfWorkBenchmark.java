@@ -0,0 +1,46 @@
+package com.ishaanraja.decentchat.benchmark;
+
+import java.security.KeyPair;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.TearDown;
+
+import com.ishaanraja.decentchat.config.DecentConfig;
+import com.ishaanraja.decentchat.crypto.KeyUtils;
+import com.ishaanraja.decentchat.message.ChatMessage;
+
+/**
+ * Measures creating a chat message, which is dominated by the proof of work nonce search, at several difficulties.
+ * Every extra bit of difficulty doubles the expected number of signatures.
+ */
+public class ProofOfWorkBenchmark extends BenchmarkSettings {
+
+	@Param({"9", "10", "12"})
+	private int difficulty;
+
+	private KeyPair keyPair;
+	private int previousDifficulty;
+
+	@Setup
+	public void setup() throws Exception {
+		keyPair = KeyUtils.generateKeyPair();
+		previousDifficulty = DecentConfig.getDifficulty();
+		DecentConfig.setDifficulty(difficulty);
+	}
+
+	/**
+	 * Restores the difficulty, so that benchmarks run after this one in the same JVM use the default.
+	 */
+	@TearDown
+	public void tearDown() {
+		DecentConfig.setDifficulty(previousDifficulty);
+	}
+
+	@Benchmark
+	public ChatMessage createChatMessage() {
+		return new ChatMessage("Benchmark message", keyPair.getPublic(), keyPair.getPrivate());
+	}
+
+}
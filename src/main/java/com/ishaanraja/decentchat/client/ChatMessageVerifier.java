@@ -0,0 +1,166 @@
+package com.ishaanraja.decentchat.client;
+
+import java.util.ArrayList;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import com.ishaanraja.decentchat.config.DecentLogger;
+import com.ishaanraja.decentchat.io.DecentSocket;
+import com.ishaanraja.decentchat.message.ChatMessage;
+
+/**
+ * ChatMessageVerifier moves chat message validation off of the socket reader threads.
+ *
+ * Incoming chat messages go through the cheap checks first (duplicate signature, timestamp, bounds and proof of work)
+ * on the thread that received them. Messages that survive have their RSA signature verified in parallel on a pool of worker threads,
+ * and are then handed to the DecentChatClient in the order they were received.
+ */
+public class ChatMessageVerifier implements Runnable {
+
+	/**
+	 * The maximum number of messages waiting for their signature to be verified. Once full, new messages are
+	 * dropped so that a flood of junk cannot use up the client's memory.
+	 */
+	private static final int MAX_PENDING_MESSAGES = 4096;
+
+	private static class PendingMessage {
+
+		private ChatMessage message;
+		private DecentSocket origin;
+		private CompletableFuture<Boolean> signatureValid;
+
+		private PendingMessage(ChatMessage message, DecentSocket origin, CompletableFuture<Boolean> signatureValid) {
+			this.message = message;
+			this.origin = origin;
+			this.signatureValid = signatureValid;
+		}
+
+	}
+
+	private DecentChatClient client;
+	private SignatureStore signatureStore;
+	//Keys of the messages being verified, see getPendingKey()
+	private Set<String> pendingKeys;
+	private BlockingQueue<PendingMessage> pendingMessages;
+	private ExecutorService workers;
+	private volatile boolean online;
+	private Thread deliveryThread;
+
+	/**
+	 * Creates a ChatMessageVerifier and starts its delivery thread.
+	 *
+	 * @param client The DecentChatClient verified messages are delivered to
+	 * @param signatureStore The DecentChatClient's store of seen signatures, used to drop duplicates early
+	 */
+	public ChatMessageVerifier(DecentChatClient client, SignatureStore signatureStore) {
+		this.client = client;
+		this.signatureStore = signatureStore;
+		this.pendingKeys = ConcurrentHashMap.newKeySet();
+		this.pendingMessages = new LinkedBlockingQueue<PendingMessage>(MAX_PENDING_MESSAGES);
+		this.workers = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), r -> {
+			Thread t = new Thread(r, "ChatMessageVerifier");
+			t.setDaemon(true);
+			return t;
+		});
+		this.online = true;
+		this.deliveryThread = new Thread(this, "ChatMessageVerifier delivery");
+		deliveryThread.setDaemon(true);
+		deliveryThread.start();
+	}
+	/**
+	 * Returns the key that identifies a copy of a chat message while its signature is being verified.
+	 * 
+	 * The key covers every signed field and not just the signature, so that a forged copy carrying a genuine 
+	 * signature does not cause the genuine copies to be dropped as already pending.
+	 * 
+	 * @param m The chat message
+	 * @return The key of the message
+	 */
+	private static String getPendingKey(ChatMessage m) {
+		return m.getSignature()+"\0"+m.getPubKey()+"\0"+m.getUsername()+"\0"+m.getMessage()+"\0"+m.getTimestamp()+"\0"+m.getNonce();
+	}
+	/**
+	 * Runs the cheap checks on a received chat message and, if they pass, queues it for signature verification.
+	 * This never blocks.
+	 *
+	 * @param m The received chat message
+	 * @param origin The DecentSocket the message was received from
+	 */
+	public void submit(ChatMessage m, DecentSocket origin) {
+		String signature = m.getSignature();
+		if(signature == null || signatureStore.contains(signature) || !m.isValidExceptSignature()) {
+			return;
+		}
+		//The same message usually arrives from several peers at once, only verify the first identical copy
+		String key = getPendingKey(m);
+		if(!pendingKeys.add(key)) {
+			return;
+		}
+		if(pendingMessages.remainingCapacity() == 0) {
+			pendingKeys.remove(key);
+			DecentLogger.write(DecentLogger.Level.WARN, "Chat message verification queue is full, dropping message");
+			return;
+		}
+		CompletableFuture<Boolean> signatureValid = CompletableFuture.supplyAsync(m::isSignatureValid, workers);
+		if(!pendingMessages.offer(new PendingMessage(m, origin, signatureValid))) {
+			pendingKeys.remove(key);
+		}
+	}
+	/**
+	 * Takes verified messages off of the queue in the order they were received and delivers the valid ones to
+	 * the DecentChatClient.
+	 */
+	@Override
+	public void run() {
+		ArrayList<PendingMessage> batch = new ArrayList<PendingMessage>();
+		while(online) {
+			try {
+				batch.add(pendingMessages.take());
+				pendingMessages.drainTo(batch);
+				for(PendingMessage p: batch) {
+					deliver(p);
+				}
+			}
+			catch(InterruptedException e) {
+				//Stopped, or keep delivering if still online
+			}
+			batch.clear();
+		}
+	}
+	private void deliver(PendingMessage p) throws InterruptedException {
+		try {
+			if(p.signatureValid.get()) {
+				client.deliverVerifiedMessage(p.message, p.origin);
+			}
+		}
+		catch(ExecutionException e) {
+			DecentLogger.write(DecentLogger.Level.WARN, "Failed to verify message signature due to "+e.getCause());
+		}
+		finally {
+			pendingKeys.remove(getPendingKey(p.message));
+		}
+	}
+	/**
+	 * Returns the number of messages waiting for their signature to be verified.
+	 *
+	 * @return the number of pending messages
+	 */
+	public int getPendingCount() {
+		return pendingMessages.size();
+	}
+	/**
+	 * Stops the delivery thread and the signature verification workers.
+	 */
+	public void stop() {
+		online = false;
+		deliveryThread.interrupt();
+		workers.shutdownNow();
+	}
+
+}
@@ -6,10 +6,9 @@ import java.net.UnknownHostException;
 import java.security.KeyPair;
 import java.security.PrivateKey;
 import java.security.PublicKey;
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Base64;
-import java.util.HashMap;
-import java.util.Map;
 
 import com.ishaanraja.decentchat.commands.CommandParser;
 import com.ishaanraja.decentchat.config.DecentConfig;
@@ -18,6 +17,7 @@ import com.ishaanraja.decentchat.config.IgnoreList;
 import com.ishaanraja.decentchat.crypto.HashUtils;
 import com.ishaanraja.decentchat.crypto.KeyUtils;
 import com.ishaanraja.decentchat.io.DecentSocket;
+import com.ishaanraja.decentchat.io.PeerStats;
 import com.ishaanraja.decentchat.message.ChatMessage;
 import com.ishaanraja.decentchat.message.Message;
 import com.ishaanraja.decentchat.p2p.NodeManager;
@@ -30,13 +30,13 @@ import com.ishaanraja.decentchat.ui.Display;
 
 public class DecentChatClient {
 	
-	private ArrayList<ChatMessage> messages;
+	private MessageHistory messages;
 	
 	/**
-	 * This map serves two purposes; it can identify duplicate messages and it can identify
-	 * how many messages have been received during some given period of time.
+	 * This store serves two purposes; it can identify duplicate messages and it can identify
+	 * how many messages have been received during the past hour.
 	 */
-	private Map<String, Long> signatureTimestampMap;
+	private SignatureStore signatureStore;
 	
 	private NodeManager nodeManager;
 	
@@ -48,6 +48,8 @@ public class DecentChatClient {
 	private CommandParser commandParser;
 	private DifficultyAdjustmentThread difficultyAdjuster;
 	private HistoryManager historyManager;
+	private ChatMessageVerifier verifier;
+	private MessageLog messageLog;
 	
 	/**
 	 * Constructs a new DecentChatClient instance. 
@@ -56,21 +58,27 @@ public class DecentChatClient {
 	 */
 	
 	public DecentChatClient(Display displayObj) {
-		this.messages = new ArrayList<ChatMessage>();
-		this.signatureTimestampMap = new HashMap<String, Long>();
+		this.messages = new MessageHistory(DecentConfig.MESSAGE_HISTORY_LENGTH);
+		this.signatureStore = new SignatureStore();
 		this.commandParser = new CommandParser(this);
 		this.displayObj = displayObj;
 		getKeys();
-		this.difficultyAdjuster = new DifficultyAdjustmentThread(this, signatureTimestampMap);
+		this.difficultyAdjuster = new DifficultyAdjustmentThread(this, signatureStore);
 		this.historyManager = new HistoryManager(this);
+		this.verifier = new ChatMessageVerifier(this, signatureStore);
+		this.messageLog = new MessageLog(new File("history"));
 		DecentLogger.write("Client started, network identifier is "+getIdentifier());
-		this.nodeManager = new NodeManager(this::onChatMessageReceived, difficultyAdjuster, historyManager);
 		display(getWelcomeMessage());
+		//Restore history before connecting, so that it can be served to the first peers that ask for it
+		restoreHistory();
+		this.nodeManager = new NodeManager(this::onChatMessageReceived, signatureStore::contains, difficultyAdjuster, historyManager);
 		Runtime.getRuntime().addShutdownHook(new Thread() {
 			@Override
 			public void run() {
 				DecentLogger.write("Client shutting down");
 				shutdown();
+				//Last, so that everything logged while shutting down is written
+				DecentLogger.close();
 			}
 		});
 	}
@@ -110,7 +118,7 @@ public class DecentChatClient {
 			}
 		}
 		catch(Exception e) {
-			DecentLogger.write("Unable to read keys from files due to "+e.getMessage());
+			DecentLogger.write(DecentLogger.Level.WARN, "Unable to read keys from files due to "+e.getMessage());
 		}
 	}
 	/**
@@ -124,12 +132,8 @@ public class DecentChatClient {
 	/**
 	 * Callback method for the receipt of a chat message. 
 	 * 
-	 * First, it verifies that this message is not a duplicate (and has not been received before).
-	 * It then checks if the message is valid.
-	 * 
-	 * If it passes all the above checks, the message is forwarded to all peers. 
-	 * As long as the message sender's identifier is not ignore, the message is displayed to user. 
-	 * If it fails any of the above checks, the message is ignored.
+	 * The message is handed to the ChatMessageVerifier, which throws away duplicate and invalid messages
+	 * and passes the rest on to deliverVerifiedMessage() in the order they were received.
 	 * 
 	 * See section 7 of the DecentChat whitepaper for more information.
 	 * 
@@ -137,19 +141,34 @@ public class DecentChatClient {
 	 * @param origin The origin of the chat message. This is not necessarily the original sender, as the message could have been forwarded. 
 	 * @return a null Void object
 	 */
-	private synchronized Void onChatMessageReceived(ChatMessage m, DecentSocket origin) {
-		if(!signatureTimestampMap.containsKey(m.getSignature()) && m.isValid()) {
+	private Void onChatMessageReceived(ChatMessage m, DecentSocket origin) {
+		verifier.submit(m, origin);
+		return null;
+	}
+	/**
+	 * Called by the ChatMessageVerifier once a chat message has been found valid.
+	 * 
+	 * If it is still not a duplicate, the message is forwarded to all peers. 
+	 * As long as the message sender's identifier is not ignored, the message is displayed to user. 
+	 * 
+	 * @param m The verified chat message
+	 * @param origin The origin of the chat message. This is not necessarily the original sender, as the message could have been forwarded. 
+	 */
+	protected synchronized void deliverVerifiedMessage(ChatMessage m, DecentSocket origin) {
+		if(signatureStore.add(m.getSignature(), m.getTimestamp())) {
 			if(!IgnoreList.isIgnored(m.getIdentifier())) {
 				display(m.toString());
 			}
 			//We still must forward ignored messages to ensure that all peers can come to 
 			//a difficulty consensus
 			propagateToAllPeers(m, origin);
+			if(origin != null) {
+				nodeManager.onChatMessageAccepted(origin);
+			}
 			messages.add(m);
-			signatureTimestampMap.put(m.getSignature(), m.getTimestamp());
+			messageLog.append(m);
 			DecentLogger.write(m);
 		}
-		return null;
 	}
 	/**
 	 * Loads a historical ChatMessage object into the UI. This method will checks if the chat message is valid, and then loads
@@ -160,11 +179,45 @@ public class DecentChatClient {
 	 * @param m The historical ChatMessage object.
 	 */
 	protected synchronized void loadIntoChatHistory(ChatMessage m) {
-		if(!IgnoreList.isIgnored(m.getIdentifier()) && !signatureTimestampMap.containsKey(m.getSignature()) && m.isValidHistoricalMessage()) {
+		if(addToChatHistory(m)) {
+			messageLog.append(m);
+		}
+	}
+	/**
+	 * Checks if a historical ChatMessage is valid, not ignored and not a duplicate, and if so
+	 * displays it and adds it to the message history.
+	 * 
+	 * @param m The historical ChatMessage object.
+	 * @return true/false whether the message was added
+	 */
+	private boolean addToChatHistory(ChatMessage m) {
+		if(!IgnoreList.isIgnored(m.getIdentifier()) && !signatureStore.contains(m.getSignature()) && m.isValidHistoricalMessage()) {
 			display(m.toString());
 			messages.add(m);
-			signatureTimestampMap.put(m.getSignature(), m.getTimestamp());
+			signatureStore.add(m.getSignature(), m.getTimestamp());
+			return true;
 		}
+		return false;
+	}
+	/**
+	 * Loads the past hour of messages from the message log. The most recent ones are validated, displayed and 
+	 * added to the message history, and the signatures of all of them are remembered so that they are not 
+	 * accepted twice when peers send them again.
+	 */
+	private synchronized void restoreHistory() {
+		long cutoff = Instant.now().getEpochSecond()-DecentConfig.HISTORICAL_TIMESTAMP_TOLERANCE;
+		ArrayList<ChatMessage> logged = messageLog.readSince(cutoff);
+		int firstToDisplay = Math.max(0, logged.size()-DecentConfig.MESSAGE_HISTORY_LENGTH);
+		int restored = 0;
+		for(int i=firstToDisplay;i<logged.size();i++) {
+			if(addToChatHistory(logged.get(i))) {
+				restored++;
+			}
+		}
+		for(int i=0;i<firstToDisplay;i++) {
+			signatureStore.add(logged.get(i).getSignature(), logged.get(i).getTimestamp());
+		}
+		DecentLogger.write("Restored "+restored+" messages from the message log");
 	}
 	/**
 	 * Sends a chat message to the network and verifies that it meets min/max length requirements.
@@ -179,7 +232,8 @@ public class DecentChatClient {
 		if(message.trim().length() <= DecentConfig.MAX_MESSAGE_LENGTH) {
 			ChatMessage m = new ChatMessage(message.trim(), pubKey, privKey);
 			messages.add(m);
-			signatureTimestampMap.put(m.getSignature(), m.getTimestamp());
+			signatureStore.add(m.getSignature(), m.getTimestamp());
+			messageLog.append(m);
 			display(m.toString());
 			nodeManager.propagateToAllPeers(m);
 			if(nodeManager.getPeers().size() == 0) {
@@ -208,7 +262,7 @@ public class DecentChatClient {
 		try {
 			nodeManager.checkPeer(InetAddress.getByName(address));
 		} catch (UnknownHostException e) {
-			DecentLogger.write("Unable to add peer "+address);
+			DecentLogger.write(DecentLogger.Level.WARN, "Unable to add peer "+address);
 		}
 	}
 	/**
@@ -232,6 +286,15 @@ public class DecentChatClient {
 	public ArrayList<InetAddress> getPeers() {
 		return nodeManager.getPeers();
 	}
+	/**
+	 * Returns the traffic and latency statistics of a peer connection.
+	 * 
+	 * @param peer The address of the peer
+	 * @return The peer's statistics or null if it is no longer a peer
+	 */
+	public PeerStats getPeerStats(InetAddress peer) {
+		return nodeManager.getPeerStats(peer);
+	}
 	/**
 	 * Gets a certain amount of messages that were received most recently, sorted by time of receipt
 	 * in ascending order. Only responds with messages that meet the historical timestamp tolerance. 
@@ -241,25 +304,8 @@ public class DecentChatClient {
 	 * on if the requested amount is greater than the total number of messages received
 	 */
 	public ChatMessage[] getLastMessages(int amount) {
-		int numOfHistoricalMessages = 0;
-		for(int i=messages.size()-1; i>=0 && messages.get(i).isValidHistoricalMessage();i--) {
-			numOfHistoricalMessages++;
-		}
-		ChatMessage[] lastMessages;
-		if(amount > numOfHistoricalMessages) {
-			lastMessages = new ChatMessage[numOfHistoricalMessages];
-		}
-		else {
-			lastMessages = new ChatMessage[amount];
-		}
-		int index = lastMessages.length-1;
-		for(int i=messages.size()-1; i>=0 && index >=0;i--) {
-			if(messages.get(i).isValidHistoricalMessage()) {
-				lastMessages[index] = messages.get(i);
-				index--;
-			}
-		}
-		return lastMessages;
+		//Peers never accept more than MESSAGE_HISTORY_LENGTH historical messages
+		return messages.getLast(Math.min(amount, DecentConfig.MESSAGE_HISTORY_LENGTH));
 	}
 	/**
 	 * Propagates a message to all peers EXCEPT for those specified. 
@@ -301,6 +347,8 @@ public class DecentChatClient {
 	 */
 	public void shutdown() {
 		nodeManager.shutdown();
+		verifier.stop();
+		messageLog.close();
 	}
 
 }
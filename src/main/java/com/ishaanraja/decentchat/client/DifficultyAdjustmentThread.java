@@ -4,11 +4,9 @@ import java.net.InetAddress;
 import java.time.Instant;
 import java.time.LocalTime;
 import java.util.ArrayList;
-import java.util.Map;
-import java.util.Map.Entry;
-import java.util.stream.Collectors;
 
 import com.ishaanraja.decentchat.config.DecentConfig;
+import com.ishaanraja.decentchat.io.DecentThreads;
 import com.ishaanraja.decentchat.message.PongMessage;
 
 /**
@@ -25,7 +23,7 @@ import com.ishaanraja.decentchat.message.PongMessage;
 public class DifficultyAdjustmentThread implements Runnable {
 	
 	private DecentChatClient client;
-	private Map<String, Long> signatureTimestampMap;
+	private SignatureStore signatureStore;
 	private long startTime;
 	private boolean online;
 	private int difficulty;
@@ -36,18 +34,18 @@ public class DifficultyAdjustmentThread implements Runnable {
 	 * Creates a new DifficultyAdjustmentThread object
 	 *  
 	 * @param client The DecentChatClient this thread will be managing
-	 * @param signatureTimestampMap The DecentChatClient's Map of ChatMessage signatures to to their timestamps
+	 * @param signatureStore The DecentChatClient's store of seen ChatMessage signatures
 	 */
 	
-	public DifficultyAdjustmentThread(DecentChatClient client, Map<String, Long> signatureTimestampMap) {
+	public DifficultyAdjustmentThread(DecentChatClient client, SignatureStore signatureStore) {
 		//The parameters are references, so when DecentChatClient updates them, we can see the updates from this thread too
 		this.client = client;
-		this.signatureTimestampMap = signatureTimestampMap;
+		this.signatureStore = signatureStore;
 		startTime = Instant.now().getEpochSecond();
 		online = true;	
 		difficultyFrequencies = new int[DecentConfig.MAX_DIFFICULTY+1];
 		difficultyPeers = new ArrayList<InetAddress>();
-		new Thread(this).start();
+		DecentThreads.start(this, "DifficultyAdjustmentThread");
 	}
 	
 	/**
@@ -235,12 +233,8 @@ public class DifficultyAdjustmentThread implements Runnable {
 	 * @return the new calculated difficulty value
 	 */
 	private int calculateDifficulty() {
-		//Getting all messages from the past hour
-		long cutoffTime = Instant.now().getEpochSecond()-3600;
-		int n = signatureTimestampMap.entrySet().stream()
-	    .filter(entry -> entry.getValue() >= cutoffTime)
-	    .map(Entry::getKey)
-	    .collect(Collectors.toList()).size();
+		//Getting the number of messages from the past hour
+		int n = signatureStore.getHourlyMessageCount();
 		int d = DecentConfig.getDifficulty();
 		//Special case for d == minimum diff.
 		if(d == DecentConfig.MIN_DIFFICULTY && n > 0) {
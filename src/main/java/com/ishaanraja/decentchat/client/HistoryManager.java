@@ -1,6 +1,7 @@
 package com.ishaanraja.decentchat.client;
 
 import com.ishaanraja.decentchat.config.DecentLogger;
+import com.ishaanraja.decentchat.io.DecentThreads;
 import com.ishaanraja.decentchat.message.ChatMessage;
 import com.ishaanraja.decentchat.message.HistoryAskMessage;
 import com.ishaanraja.decentchat.message.HistoryMessage;
@@ -23,7 +24,7 @@ public class HistoryManager implements Runnable {
 	 */
 	public HistoryManager(DecentChatClient client) {
 		this.client = client;
-		new Thread(this).start();
+		DecentThreads.start(this, "HistoryManager");
 	}
 	/**
 	 * This waits for 10 seconds (to allow the client to locate peers), then it sends out "historyAsk" messages
@@ -0,0 +1,82 @@
+package com.ishaanraja.decentchat.client;
+
+import java.time.Instant;
+
+import com.ishaanraja.decentchat.config.DecentConfig;
+import com.ishaanraja.decentchat.message.ChatMessage;
+
+/**
+ * A fixed capacity ring buffer of the most recently received (or sent) chat messages.
+ * 
+ * Only messages that have already been validated are added, so history requests from other peers
+ * can be answered without verifying any signatures again. Once full, the oldest message is overwritten,
+ * so memory use does not grow with the client's uptime.
+ */
+public class MessageHistory {
+	
+	private ChatMessage[] ring;
+	//Index the next message will be written to
+	private int head;
+	private int size;
+	
+	/**
+	 * Creates a MessageHistory that holds up to capacity messages.
+	 * 
+	 * @param capacity The maximum number of messages to remember
+	 */
+	public MessageHistory(int capacity) {
+		this.ring = new ChatMessage[capacity];
+	}
+	/**
+	 * Adds an already validated message, overwriting the oldest message if the history is full.
+	 * 
+	 * @param m The message to add
+	 */
+	public synchronized void add(ChatMessage m) {
+		ring[head] = m;
+		head = (head+1) % ring.length;
+		if(size < ring.length) {
+			size++;
+		}
+	}
+	/**
+	 * Gets a certain amount of messages that were received most recently, sorted by time of receipt
+	 * in ascending order. Only returns messages whose timestamp is within the historical timestamp tolerance.
+	 * 
+	 * @param amount number of most recently received messages to get
+	 * @return an array of at most amount ChatMessage objects
+	 */
+	public synchronized ChatMessage[] getLast(int amount) {
+		long now = Instant.now().getEpochSecond();
+		long timestampTolerance = DecentConfig.HISTORICAL_TIMESTAMP_TOLERANCE;
+		int count = 0;
+		//Walk backwards from the newest message until one is too old (or the request is satisfied)
+		while(count < amount && count < size) {
+			long timestamp = get(count).getTimestamp();
+			if(timestamp < now-timestampTolerance || timestamp > now+timestampTolerance) {
+				break;
+			}
+			count++;
+		}
+		ChatMessage[] lastMessages = new ChatMessage[count];
+		for(int i=0;i<count;i++) {
+			lastMessages[count-1-i] = get(i);
+		}
+		return lastMessages;
+	}
+	/**
+	 * Returns the message that was added age messages ago (0 being the newest).
+	 */
+	private ChatMessage get(int age) {
+		return ring[Math.floorMod(head-1-age, ring.length)];
+	}
+	/**
+	 * Returns the number of messages currently held.
+	 * 
+	 * @return the number of messages
+	 */
+	public synchronized int size() {
+		return size;
+	}
+
+}
@@ -0,0 +1,269 @@
+package com.ishaanraja.decentchat.client;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+import com.google.gson.Gson;
+import com.ishaanraja.decentchat.config.DecentConfig;
+import com.ishaanraja.decentchat.config.DecentLogger;
+import com.ishaanraja.decentchat.message.ChatMessage;
+import com.ishaanraja.decentchat.message.JsonCodec;
+
+/**
+ * An append-only log of every chat message the client has accepted, stored with its full signature
+ * so that it can be validated again and served to other peers after a restart.
+ *
+ * The log is split into segments. Each segment is a pair of files:
+ * <ul>
+ * <li>[id].seg - records of the form [int length][int CRC32 of payload][payload], where payload is the message's JSON
+ * <li>[id].idx - one fixed size entry of the form [long timestamp][long record offset] per record
+ * </ul>
+ * On startup, the index files are scanned to find the records of the past hour, which are then read from the memory-mapped
+ * segment files. A new segment is started on every startup and whenever the current one exceeds MAX_SEGMENT_SIZE.
+ * Segments that only contain messages older than the historical timestamp tolerance are deleted.
+ *
+ * Appends are written by the log's own thread in the order they were made, so that callers holding the
+ * client's lock never wait for the disk.
+ */
+public class MessageLog {
+
+	private static final long MAX_SEGMENT_SIZE = 4 * 1024 * 1024;
+	private static final int INDEX_ENTRY_SIZE = 16;
+	private static final int RECORD_HEADER_SIZE = 8;
+	private static final String SEGMENT_EXTENSION = ".seg";
+	private static final String INDEX_EXTENSION = ".idx";
+	private static final long CLOSE_TIMEOUT_SECONDS = 5;
+
+	private File directory;
+	private FileChannel segment;
+	private FileChannel index;
+	private long segmentSize;
+	private Gson gson;
+	private final ExecutorService writer;
+
+	/**
+	 * Opens the message log in the given directory, creating it if it does not exist.
+	 *
+	 * @param directory The directory holding the segment and index files
+	 */
+	public MessageLog(File directory) {
+		this.directory = directory;
+		this.gson = JsonCodec.getGson();
+		this.writer = Executors.newSingleThreadExecutor(r -> {
+			Thread t = new Thread(r, "MessageLog");
+			t.setDaemon(true);
+			return t;
+		});
+		if(!directory.exists() && !directory.mkdirs()) {
+			DecentLogger.write(DecentLogger.Level.WARN, "Unable to create message log directory "+directory.getName());
+		}
+		deleteExpiredSegments();
+	}
+	/**
+	 * Queues a message to be appended to the current segment. Does not wait for it to be written.
+	 *
+	 * @param m The already validated message to append
+	 */
+	public void append(ChatMessage m) {
+		try {
+			writer.execute(() -> write(m));
+		}
+		catch(RejectedExecutionException e) {
+			//The log is closed, messages that arrive while shutting down are not kept
+		}
+	}
+	/**
+	 * Writes a message to the current segment, starting a new segment if needed. Runs on the writer thread.
+	 *
+	 * @param m The message to write
+	 */
+	private synchronized void write(ChatMessage m) {
+		try {
+			if(segment == null || segmentSize >= MAX_SEGMENT_SIZE) {
+				openNewSegment();
+			}
+			byte[] payload = gson.toJson(m).getBytes(StandardCharsets.UTF_8);
+			CRC32 crc = new CRC32();
+			crc.update(payload);
+			ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE+payload.length);
+			record.putInt(payload.length).putInt((int) crc.getValue()).put(payload).flip();
+			ByteBuffer entry = ByteBuffer.allocate(INDEX_ENTRY_SIZE);
+			entry.putLong(m.getTimestamp()).putLong(segmentSize).flip();
+			//Record first, so that the index never points past the end of the segment
+			while(record.hasRemaining()) {
+				segmentSize+=segment.write(record);
+			}
+			while(entry.hasRemaining()) {
+				index.write(entry);
+			}
+		}
+		catch(IOException e) {
+			DecentLogger.write(DecentLogger.Level.WARN, "Unable to append message to message log because of "+e.getMessage());
+		}
+	}
+	/**
+	 * Reads every message with a timestamp at or after the cutoff, in the order they were appended.
+	 * Records that are incomplete or fail their checksum (for example after a crash) are skipped.
+	 *
+	 * Note: The returned messages are not validated, and messages still queued by append() are not included.
+	 *
+	 * @param cutoff The epoch second to read messages from
+	 * @return A list of messages appended with a timestamp of at least cutoff
+	 */
+	public synchronized ArrayList<ChatMessage> readSince(long cutoff) {
+		ArrayList<ChatMessage> result = new ArrayList<ChatMessage>();
+		for(File segmentFile: listSegments()) {
+			File indexFile = getIndexFile(segmentFile);
+			try(RandomAccessFile segmentRaf = new RandomAccessFile(segmentFile, "r"); RandomAccessFile indexRaf = new RandomAccessFile(indexFile, "r")) {
+				long indexLength = indexRaf.length()-(indexRaf.length() % INDEX_ENTRY_SIZE);
+				if(indexLength == 0 || segmentRaf.length() == 0) {
+					continue;
+				}
+				MappedByteBuffer indexBuffer = indexRaf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, indexLength);
+				MappedByteBuffer segmentBuffer = null;
+				while(indexBuffer.hasRemaining()) {
+					long timestamp = indexBuffer.getLong();
+					long offset = indexBuffer.getLong();
+					if(timestamp < cutoff) {
+						continue;
+					}
+					//Only map the segment once it is known to hold a record we want
+					if(segmentBuffer == null) {
+						segmentBuffer = segmentRaf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, segmentRaf.length());
+					}
+					ChatMessage m = readRecord(segmentBuffer, offset);
+					if(m != null) {
+						result.add(m);
+					}
+				}
+			}
+			catch(IOException e) {
+				DecentLogger.write(DecentLogger.Level.WARN, "Unable to read message log segment "+segmentFile.getName()+" because of "+e.getMessage());
+			}
+		}
+		return result;
+	}
+	private ChatMessage readRecord(MappedByteBuffer segmentBuffer, long offset) {
+		if(offset < 0 || offset+RECORD_HEADER_SIZE > segmentBuffer.limit()) {
+			return null;
+		}
+		int length = segmentBuffer.getInt((int) offset);
+		int checksum = segmentBuffer.getInt((int) offset+4);
+		if(length <= 0 || offset+RECORD_HEADER_SIZE+length > segmentBuffer.limit()) {
+			return null;
+		}
+		byte[] payload = new byte[length];
+		ByteBuffer record = segmentBuffer.duplicate();
+		record.position((int) offset+RECORD_HEADER_SIZE);
+		record.get(payload);
+		CRC32 crc = new CRC32();
+		crc.update(payload);
+		if((int) crc.getValue() != checksum) {
+			return null;
+		}
+		try {
+			return gson.fromJson(new String(payload, StandardCharsets.UTF_8), ChatMessage.class);
+		}
+		catch(Exception e) {
+			return null;
+		}
+	}
+	private void openNewSegment() throws IOException {
+		closeSegment();
+		deleteExpiredSegments();
+		String id = String.format("%020d", System.currentTimeMillis());
+		segment = new RandomAccessFile(new File(directory, id+SEGMENT_EXTENSION), "rw").getChannel();
+		index = new RandomAccessFile(new File(directory, id+INDEX_EXTENSION), "rw").getChannel();
+		segmentSize = 0;
+	}
+	/**
+	 * Deletes every segment whose newest message is older than the historical timestamp tolerance, 
+	 * since those messages can never be served as history again. Only called while no segment is open.
+	 */
+	private void deleteExpiredSegments() {
+		long cutoff = Instant.now().getEpochSecond()-DecentConfig.HISTORICAL_TIMESTAMP_TOLERANCE;
+		for(File segmentFile: listSegments()) {
+			File indexFile = getIndexFile(segmentFile);
+			if(getNewestTimestamp(indexFile) < cutoff) {
+				if(!segmentFile.delete() || !indexFile.delete()) {
+					DecentLogger.write(DecentLogger.Level.WARN, "Unable to delete expired message log segment "+segmentFile.getName());
+				}
+			}
+		}
+	}
+	private static long getNewestTimestamp(File indexFile) {
+		long newest = Long.MIN_VALUE;
+		try(RandomAccessFile indexRaf = new RandomAccessFile(indexFile, "r")) {
+			long indexLength = indexRaf.length()-(indexRaf.length() % INDEX_ENTRY_SIZE);
+			if(indexLength > 0) {
+				MappedByteBuffer indexBuffer = indexRaf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, indexLength);
+				for(int offset=0;offset<indexLength;offset+=INDEX_ENTRY_SIZE) {
+					newest = Math.max(newest, indexBuffer.getLong(offset));
+				}
+			}
+		}
+		catch(IOException e) {
+			//Missing or unreadable index, treat the segment as expired
+		}
+		return newest;
+	}
+	private File[] listSegments() {
+		File[] segments = directory.listFiles((dir, name) -> name.endsWith(SEGMENT_EXTENSION));
+		if(segments == null) {
+			return new File[0];
+		}
+		//Segment names are zero padded creation times, so sorting by name sorts by age
+		Arrays.sort(segments);
+		return segments;
+	}
+	private static File getIndexFile(File segmentFile) {
+		String name = segmentFile.getName();
+		return new File(segmentFile.getParentFile(), name.substring(0, name.length()-SEGMENT_EXTENSION.length())+INDEX_EXTENSION);
+	}
+	/**
+	 * Writes the messages still queued, waiting up to CLOSE_TIMEOUT_SECONDS, and closes the current segment. 
+	 * Messages appended afterwards are discarded.
+	 */
+	public void close() {
+		writer.shutdown();
+		try {
+			if(!writer.awaitTermination(CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+				DecentLogger.write(DecentLogger.Level.WARN, "Timed out writing the message log, the newest messages may be missing");
+			}
+		}
+		catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		closeSegment();
+	}
+	/**
+	 * Closes the current segment. The next write starts a new one.
+	 */
+	private synchronized void closeSegment() {
+		try {
+			if(segment != null) {
+				segment.close();
+				index.close();
+			}
+		}
+		catch(IOException e) {
+			DecentLogger.write(DecentLogger.Level.WARN, "Unable to close message log segment");
+		}
+		segment = null;
+		index = null;
+	}
+
+}
@@ -0,0 +1,172 @@
+package com.ishaanraja.decentchat.client;
+
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.ishaanraja.decentchat.config.DecentConfig;
+
+/**
+ * SignatureStore remembers the signatures of every chat message seen within the historical timestamp tolerance.
+ *
+ * It serves two purposes; it can identify duplicate messages and it can identify how many messages have been received
+ * during the past hour.
+ *
+ * Instead of the full 344 character Base 64 signature, only a 128 bit digest is kept (the last 16 bytes of the signature,
+ * which unlike the leading bytes are not zeroed out by the proof of work). Signatures are grouped into one minute buckets
+ * by message timestamp, and whole buckets are dropped once they fall out of the historical timestamp tolerance, so memory use
+ * stays flat no matter how long the client runs. Messages that old would be rejected by ChatMessage validation anyway.
+ */
+public class SignatureStore {
+
+	private static final int BUCKET_SECONDS = 60;
+
+	/**
+	 * A compact, hashable digest of a message signature.
+	 */
+	private static final class SignatureDigest {
+
+		private final long high;
+		private final long low;
+
+		private SignatureDigest(long high, long low) {
+			this.high = high;
+			this.low = low;
+		}
+
+		private static SignatureDigest of(String signature) {
+			byte[] sigBytes;
+			try {
+				sigBytes = Base64.getDecoder().decode(signature);
+			}
+			catch(IllegalArgumentException e) {
+				sigBytes = signature.getBytes();
+			}
+			return of(sigBytes);
+		}
+
+		private static SignatureDigest of(byte[] sigBytes) {
+			if(sigBytes.length < 16) {
+				sigBytes = ByteBuffer.allocate(16).put(sigBytes).array();
+			}
+			ByteBuffer buffer = ByteBuffer.wrap(sigBytes);
+			return new SignatureDigest(buffer.getLong(sigBytes.length-16), buffer.getLong(sigBytes.length-8));
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if(!(o instanceof SignatureDigest)) {
+				return false;
+			}
+			SignatureDigest d = (SignatureDigest) o;
+			return high == d.high && low == d.low;
+		}
+
+		@Override
+		public int hashCode() {
+			return Long.hashCode(high*31+low);
+		}
+
+	}
+
+	private long window;
+	private Set<SignatureDigest> seen;
+	//Message timestamp minute -> signatures with a timestamp in that minute
+	private TreeMap<Long, ArrayList<SignatureDigest>> buckets;
+
+	/**
+	 * Creates a SignatureStore that remembers signatures for the historical timestamp tolerance.
+	 */
+	public SignatureStore() {
+		this.window = DecentConfig.HISTORICAL_TIMESTAMP_TOLERANCE;
+		this.seen = ConcurrentHashMap.newKeySet();
+		this.buckets = new TreeMap<Long, ArrayList<SignatureDigest>>();
+	}
+	/**
+	 * Returns whether a message with the given signature has already been seen. This does not lock and is
+	 * safe to call from any thread.
+	 *
+	 * @param signature The Base 64 signature of the message
+	 * @return true/false if the signature has been seen within the historical timestamp tolerance
+	 */
+	public boolean contains(String signature) {
+		return seen.contains(SignatureDigest.of(signature));
+	}
+	/**
+	 * Returns whether a message with the given raw (already Base 64 decoded) signature has already been seen. 
+	 * This does not lock and is safe to call from any thread.
+	 *
+	 * @param signature The raw bytes of the message's signature
+	 * @return true/false if the signature has been seen within the historical timestamp tolerance
+	 */
+	public boolean contains(byte[] signature) {
+		return seen.contains(SignatureDigest.of(signature));
+	}
+	/**
+	 * Records a message's signature.
+	 *
+	 * @param signature The Base 64 signature of the message
+	 * @param timestamp The message's timestamp
+	 * @return true if the signature was not seen before, false if it is a duplicate
+	 */
+	public synchronized boolean add(String signature, long timestamp) {
+		long now = Instant.now().getEpochSecond();
+		expire(now);
+		if(timestamp < now-window) {
+			//Too old to be accepted again, no need to remember it
+			return true;
+		}
+		SignatureDigest digest = SignatureDigest.of(signature);
+		if(!seen.add(digest)) {
+			return false;
+		}
+		long bucket = Math.floorDiv(timestamp, BUCKET_SECONDS);
+		ArrayList<SignatureDigest> digests = buckets.get(bucket);
+		if(digests == null) {
+			digests = new ArrayList<SignatureDigest>();
+			buckets.put(bucket, digests);
+		}
+		digests.add(digest);
+		return true;
+	}
+	/**
+	 * Returns the number of messages with a timestamp within the past hour. Because old signatures are dropped in
+	 * whole minutes, this is accurate to the minute.
+	 *
+	 * @return the number of messages seen in the past hour
+	 */
+	public synchronized int getHourlyMessageCount() {
+		expire(Instant.now().getEpochSecond());
+		return seen.size();
+	}
+	/**
+	 * Returns the number of signatures currently remembered.
+	 *
+	 * @return the number of remembered signatures
+	 */
+	public int size() {
+		return seen.size();
+	}
+	/**
+	 * Drops every bucket whose newest possible timestamp is older than the window.
+	 *
+	 * @param now The current epoch time in seconds
+	 */
+	private void expire(long now) {
+		long oldestBucket = Math.floorDiv(now-window, BUCKET_SECONDS);
+		Iterator<Map.Entry<Long, ArrayList<SignatureDigest>>> itr = buckets.headMap(oldestBucket).entrySet().iterator();
+		while(itr.hasNext()) {
+			for(SignatureDigest digest: itr.next().getValue()) {
+				seen.remove(digest);
+			}
+			itr.remove();
+		}
+	}
+
+}
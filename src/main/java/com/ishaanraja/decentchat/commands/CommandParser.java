@@ -60,6 +60,12 @@ public class CommandParser {
 				return new UnignoreCommand();
 			case "changeusername":
 				return new ChangeUsernameCommand();
+			case "keycacheinfo":
+				return new KeyCacheInfoCommand();
+			case "duplicateinfo":
+				return new DuplicateInfoCommand();
+			case "netstats":
+				return new NetStatsCommand();
 			default:
 				return null;
 		}
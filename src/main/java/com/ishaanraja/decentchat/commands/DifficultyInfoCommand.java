@@ -2,12 +2,18 @@ package com.ishaanraja.decentchat.commands;
 
 import com.ishaanraja.decentchat.client.DecentChatClient;
 import com.ishaanraja.decentchat.config.DecentConfig;
+import com.ishaanraja.decentchat.message.ProofOfWorkSearcher;
 
 public class DifficultyInfoCommand extends Command {
 
 	@Override
 	protected String execute(DecentChatClient client, String[] arguments) {
-		return "Current Difficulty is: "+DecentConfig.getDifficulty();
+		String response = "Current Difficulty is: "+DecentConfig.getDifficulty();
+		double hashRate = ProofOfWorkSearcher.getLastHashRate();
+		if(hashRate > 0) {
+			response+=String.format("\nLast proof of work rate: %.1f signatures/sec on %d threads", hashRate, DecentConfig.getProofOfWorkThreads());
+		}
+		return response;
 	}
 
 	@Override
@@ -0,0 +1,30 @@
+package com.ishaanraja.decentchat.commands;
+
+import com.ishaanraja.decentchat.client.DecentChatClient;
+import com.ishaanraja.decentchat.io.DuplicateFilter;
+
+public class DuplicateInfoCommand extends Command {
+
+	@Override
+	protected String execute(DecentChatClient client, String[] arguments) {
+		long checked = DuplicateFilter.getChecked();
+		long dropped = DuplicateFilter.getDropped();
+		String response = "Duplicate Filter:\n";
+		response+="Chat messages checked: "+checked+"\n";
+		response+="Duplicates dropped before decoding: "+dropped+"\n";
+		response+=String.format("Bytes not decoded: %.1f KB", DuplicateFilter.getDroppedBytes()/1024.0);
+		if(checked > 0) {
+			response+=String.format("\nDuplicate rate: %.1f%%", 100.0*dropped/checked);
+		}
+		long sends = DuplicateFilter.getBroadcastSends();
+		long suppressed = DuplicateFilter.getSuppressedSends();
+		response+="\nChat message sends skipped (peer already had message): "+suppressed+" of "+sends;
+		return response;
+	}
+
+	@Override
+	public String getName() {
+		return "duplicateinfo";
+	}
+
+}
@@ -8,13 +8,16 @@ public class HelpCommand extends Command {
 	protected String execute(DecentChatClient client, String[] arguments) {
 		return  "/help - Provides a list of available commands\n" + 
 				"/addpeer [address] - Allows a user to manually add a peer by specifying its IP Address\n" + 
-				"/peerinfo - Shows a list of connected peers\n" + 
+				"/peerinfo - Shows a list of connected peers and their round trip times\n" + 
 				"/difficultyinfo - Shows the client’s current difficulty\n" +
 				"/ignore [identifier] - Ignores a specified identifier\n" + 
 				"/ignorelist - Shows the list of currently ignored identifiers\n" + 
 				"/info - Shows information about the current client\n" +
 				"/unignore [identifier] - Removes a specified identifier from the ignore list\n" + 
-				"/changeusername [new_username] - Changes the client’s human readable username for all following\n messages.";
+				"/changeusername [new_username] - Changes the client’s human readable username for all following\n messages.\n" +
+				"/keycacheinfo - Shows hit/miss statistics of the public key cache\n" +
+				"/duplicateinfo - Shows how many duplicate chat messages were dropped before being decoded or not sent to peers that already had them\n" +
+				"/netstats [dump] - Shows traffic, queue and latency statistics of every peer, or writes them to netstats.json";
 	}
 
 	@Override
@@ -0,0 +1,28 @@
+package com.ishaanraja.decentchat.commands;
+
+import com.ishaanraja.decentchat.client.DecentChatClient;
+import com.ishaanraja.decentchat.crypto.PublicKeyCache;
+
+public class KeyCacheInfoCommand extends Command {
+
+	@Override
+	protected String execute(DecentChatClient client, String[] arguments) {
+		long hits = PublicKeyCache.getHits();
+		long misses = PublicKeyCache.getMisses();
+		long lookups = hits+misses;
+		String response = "Public Key Cache:\n";
+		response+="Cached keys: "+PublicKeyCache.size()+"\n";
+		response+="Hits: "+hits+"\n";
+		response+="Misses: "+misses;
+		if(lookups > 0) {
+			response+=String.format("\nHit rate: %.1f%%", 100.0*hits/lookups);
+		}
+		return response;
+	}
+
+	@Override
+	public String getName() {
+		return "keycacheinfo";
+	}
+
+}
@@ -0,0 +1,83 @@
+package com.ishaanraja.decentchat.commands;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.time.Instant;
+import java.util.ArrayList;
+
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonObject;
+import com.ishaanraja.decentchat.client.DecentChatClient;
+import com.ishaanraja.decentchat.io.PeerStats;
+
+public class NetStatsCommand extends Command {
+
+	private static final String DUMP_FILE = "netstats.json";
+
+	@Override
+	protected String execute(DecentChatClient client, String[] arguments) {
+		if(arguments != null && arguments.length == 1 && "dump".equalsIgnoreCase(arguments[0].trim())) {
+			return dump(client);
+		}
+		ArrayList<InetAddress> peers = client.getPeers();
+		if(peers.size() == 0) {
+			return "No peers";
+		}
+		String response = "Network Statistics:";
+		long bytesIn = 0;
+		long bytesOut = 0;
+		for(InetAddress peer: peers) {
+			PeerStats stats = client.getPeerStats(peer);
+			if(stats != null) {
+				bytesIn+=stats.getBytesIn();
+				bytesOut+=stats.getBytesOut();
+				response+="\n"+peer.getHostAddress()+" - up "+formatAge(stats.getAgeMillis());
+				response+=String.format(", in %d msgs/%.1f KB, out %d msgs/%.1f KB", stats.getFramesIn(), stats.getBytesIn()/1024.0, stats.getFramesOut(), stats.getBytesOut()/1024.0);
+				response+=", queued "+stats.getQueueDepth()+" (max "+stats.getMaxQueueDepth()+", dropped "+stats.getDropped()+")";
+				response+=", duplicates "+stats.getDuplicatesIn()+", invalid "+stats.getInvalid();
+				response+=", "+stats.getRoundTripTime();
+			}
+		}
+		response+=String.format("\nTotal: in %.1f KB, out %.1f KB", bytesIn/1024.0, bytesOut/1024.0);
+		return response;
+	}
+	/**
+	 * Writes the statistics of every peer to DUMP_FILE as JSON.
+	 */
+	private static String dump(DecentChatClient client) {
+		JsonObject json = new JsonObject();
+		json.addProperty("timestamp", Instant.now().getEpochSecond());
+		JsonObject peersJson = new JsonObject();
+		for(InetAddress peer: client.getPeers()) {
+			PeerStats stats = client.getPeerStats(peer);
+			if(stats != null) {
+				peersJson.add(peer.getHostAddress(), stats.toJson());
+			}
+		}
+		json.add("peers", peersJson);
+		try(FileWriter filewriter = new FileWriter(DUMP_FILE)) {
+			filewriter.write(new GsonBuilder().setPrettyPrinting().create().toJson(json));
+		}
+		catch(IOException e) {
+			return "Unable to write "+DUMP_FILE;
+		}
+		return "Wrote network statistics to "+DUMP_FILE;
+	}
+	private static String formatAge(long millis) {
+		long seconds = millis/1000;
+		if(seconds < 60) {
+			return seconds+"s";
+		}
+		else if(seconds < 60*60) {
+			return String.format("%dm%02ds", seconds/60, seconds%60);
+		}
+		return String.format("%dh%02dm", seconds/3600, (seconds/60)%60);
+	}
+
+	@Override
+	public String getName() {
+		return "netstats";
+	}
+
+}
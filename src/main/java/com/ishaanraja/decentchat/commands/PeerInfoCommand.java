@@ -4,6 +4,7 @@ import java.net.InetAddress;
 import java.util.ArrayList;
 
 import com.ishaanraja.decentchat.client.DecentChatClient;
+import com.ishaanraja.decentchat.io.PeerStats;
  
 public class PeerInfoCommand extends Command {
 	
@@ -12,16 +13,23 @@ public class PeerInfoCommand extends Command {
 		String peers = "Peers:\n";
 		ArrayList<InetAddress> peersArr = client.getPeers();
 		for(int i=0;i<peersArr.size()-1;i++) {
-			peers+=peersArr.get(i).getHostAddress()+"\n";
+			peers+=getPeerInfo(client, peersArr.get(i))+"\n";
 		}
 		if(peersArr.size() > 0) {
-			peers+=peersArr.get(peersArr.size()-1).getHostAddress();
+			peers+=getPeerInfo(client, peersArr.get(peersArr.size()-1));
 		}
 		else {
 			peers+="WARNING: No peers found, please check firewall that outbound connections to port 10862 are permitted";
 		}
 		return peers;
 	}
+	private static String getPeerInfo(DecentChatClient client, InetAddress peer) {
+		PeerStats stats = client.getPeerStats(peer);
+		if(stats == null) {
+			return peer.getHostAddress();
+		}
+		return peer.getHostAddress()+" - "+stats.getRoundTripTime();
+	}
 
 	@Override
 	public String getName() {
@@ -23,7 +23,7 @@ public final class DecentConfig {
 	public static final short PORT = 10862;
 	public static final int MAX_DIFFICULTY = 2048;
 	public static final int MIN_DIFFICULTY = 9;
-	public static final String VERSION = "1.0";
+	public static final String VERSION = "1.3";
 	//Maximum length of a message, in characters
 	public static final int MAX_MESSAGE_LENGTH = 256;
 	//Maximum length of a username, in characters
@@ -57,6 +57,19 @@ public final class DecentConfig {
 	private static String username = "Newbie";
 	private static boolean upnpEnabled = true;
 	private static boolean headlessMode = false;
+	private static boolean selectorTransport = false;
+	private static int proofOfWorkThreads = Runtime.getRuntime().availableProcessors();
+	private static boolean binaryCodec = true;
+	private static boolean inventoryGossip = false;
+	private static boolean broadcastTree = false;
+	private static boolean virtualThreads = true;
+	private static int outboundQueueCapacity = 1024;
+	private static String outboundQueuePolicy = "dropOldest";
+	private static DecentLogger.Level logLevel = DecentLogger.Level.INFO;
+	//In megabytes
+	private static int logMaxFileSize = 10;
+	private static int logMaxFiles = 5;
+	private static int scrollbackLines = 5000;
 	
 	private DecentConfig() {}
 	
@@ -68,7 +81,7 @@ public final class DecentConfig {
 				configFile.createNewFile();
 				writeToFile();
 			} catch (IOException e) {
-				DecentLogger.write("Unable to create config.json");
+				DecentLogger.write(DecentLogger.Level.WARN, "Unable to create config.json");
 			}
 		}
 		else {
@@ -79,16 +92,65 @@ public final class DecentConfig {
 				username = jsonObj.get("username").getAsString();
 				headlessMode = jsonObj.get("headlessMode").getAsBoolean();
 				if(username.length() < 1 || username.length() > 16) {
-					DecentLogger.write("Could not set username to "+username+" because it is not between 1 and 16 characters");
+					DecentLogger.write(DecentLogger.Level.WARN, "Could not set username to "+username+" because it is not between 1 and 16 characters");
 					username = "Newbie";
 					
 				}
+				//Options added after 1.0 may be missing from older config files
+				if(jsonObj.has("selectorTransport")) {
+					selectorTransport = jsonObj.get("selectorTransport").getAsBoolean();
+				}
+				if(jsonObj.has("proofOfWorkThreads") && jsonObj.get("proofOfWorkThreads").getAsInt() >= 1) {
+					proofOfWorkThreads = jsonObj.get("proofOfWorkThreads").getAsInt();
+				}
+				if(jsonObj.has("binaryCodec")) {
+					binaryCodec = jsonObj.get("binaryCodec").getAsBoolean();
+				}
+				if(jsonObj.has("inventoryGossip")) {
+					inventoryGossip = jsonObj.get("inventoryGossip").getAsBoolean();
+				}
+				if(jsonObj.has("broadcastTree")) {
+					broadcastTree = jsonObj.get("broadcastTree").getAsBoolean();
+				}
+				if(jsonObj.has("virtualThreads")) {
+					virtualThreads = jsonObj.get("virtualThreads").getAsBoolean();
+				}
+				if(jsonObj.has("outboundQueueCapacity") && jsonObj.get("outboundQueueCapacity").getAsInt() >= 1) {
+					outboundQueueCapacity = jsonObj.get("outboundQueueCapacity").getAsInt();
+				}
+				if(jsonObj.has("outboundQueuePolicy")) {
+					String policy = jsonObj.get("outboundQueuePolicy").getAsString();
+					if(policy.equals("dropOldest") || policy.equals("dropByPriority") || policy.equals("disconnect")) {
+						outboundQueuePolicy = policy;
+					}
+					else {
+						DecentLogger.write(DecentLogger.Level.WARN, "Unknown outboundQueuePolicy "+policy+", using "+outboundQueuePolicy);
+					}
+				}
+				if(jsonObj.has("scrollbackLines") && jsonObj.get("scrollbackLines").getAsInt() >= 1) {
+					scrollbackLines = jsonObj.get("scrollbackLines").getAsInt();
+				}
+				if(jsonObj.has("logLevel")) {
+					String level = jsonObj.get("logLevel").getAsString();
+					try {
+						logLevel = DecentLogger.Level.valueOf(level.toUpperCase());
+					}
+					catch(IllegalArgumentException e) {
+						DecentLogger.write(DecentLogger.Level.WARN, "Unknown logLevel "+level+", using "+logLevel);
+					}
+				}
+				if(jsonObj.has("logMaxFileSize") && jsonObj.get("logMaxFileSize").getAsInt() >= 1) {
+					logMaxFileSize = jsonObj.get("logMaxFileSize").getAsInt();
+				}
+				if(jsonObj.has("logMaxFiles") && jsonObj.get("logMaxFiles").getAsInt() >= 1) {
+					logMaxFiles = jsonObj.get("logMaxFiles").getAsInt();
+				}
 				setUPNPEnabled(jsonObj.get("upnpEnabled").getAsBoolean());
 			} catch (Exception e) {
-				DecentLogger.write("Unable to read config.json");
+				DecentLogger.write(DecentLogger.Level.WARN, "Unable to read config.json");
 			}
 		}
-		
+		DecentLogger.configure(logLevel, logMaxFileSize*1024L*1024L, logMaxFiles);
 	}
 	/**
 	 * Difficulty is a measure of how difficult the proof of work required is. 
@@ -184,6 +246,103 @@ public final class DecentConfig {
 	public static boolean getHeadlessMode() {
 		return headlessMode;
 	}
+	/**
+	 * By default, every peer connection is served by its own thread. If selectorTransport is set to
+	 * true in the config, all peer connections are instead served by a single java.nio Selector 
+	 * event loop, which lets relay nodes hold far more peers with flat CPU use.
+	 * 
+	 * @see com.ishaanraja.decentchat.io.DecentSelector
+	 * 
+	 * @return true/false whether the selector transport is enabled
+	 */
+	public static boolean getSelectorTransport() {
+		return selectorTransport;
+	}
+	/**
+	 * The number of threads used to search for a chat message's proof of work nonce. 
+	 * Defaults to the number of available processors.
+	 * 
+	 * @see com.ishaanraja.decentchat.message.ProofOfWorkSearcher
+	 * 
+	 * @return The number of proof of work threads (always at least 1)
+	 */
+	public static int getProofOfWorkThreads() {
+		return proofOfWorkThreads;
+	}
+	/**
+	 * Whether messages may be sent to peers using the compact binary framing instead of JSON. Binary 
+	 * frames are only ever sent to peers that have advertised support for them, and are always accepted
+	 * from peers regardless of this setting.
+	 * 
+	 * @see com.ishaanraja.decentchat.message.BinaryCodec
+	 * 
+	 * @return true/false whether the binary codec is enabled
+	 */
+	public static boolean getBinaryCodec() {
+		return binaryCodec;
+	}
+	/**
+	 * Whether chat messages should only be announced by ID to peers that support it, instead of being 
+	 * pushed in full. Peers then fetch the messages they are missing. Peers that do not support this are 
+	 * always pushed full messages, and announcements from peers are always answered regardless of this setting.
+	 * 
+	 * @see com.ishaanraja.decentchat.message.InventoryMessage
+	 * 
+	 * @return true/false whether inventory gossip is enabled
+	 */
+	public static boolean getInventoryGossip() {
+		return inventoryGossip;
+	}
+	/**
+	 * Whether chat messages should be broadcast along a self repairing spanning tree of the peers instead 
+	 * of being flooded to every peer. Redundant links are pruned to announcements only, and links to peers 
+	 * that do not support this always receive full messages.
+	 * 
+	 * @see com.ishaanraja.decentchat.p2p.BroadcastTree
+	 * 
+	 * @return true/false whether the broadcast tree is enabled
+	 */
+	public static boolean getBroadcastTree() {
+		return broadcastTree;
+	}
+	/**
+	 * Whether peer connections and the other long running loops should run on virtual threads. Only 
+	 * has an effect on Java 21 or later.
+	 * 
+	 * @see com.ishaanraja.decentchat.io.DecentThreads
+	 * 
+	 * @return true/false whether virtual threads are enabled
+	 */
+	public static boolean getVirtualThreads() {
+		return virtualThreads;
+	}
+	/**
+	 * The maximum number of messages that may wait to be sent to a single peer.
+	 * 
+	 * @return The capacity of every peer's sending queue
+	 */
+	public static int getOutboundQueueCapacity() {
+		return outboundQueueCapacity;
+	}
+	/**
+	 * What to do when a message is sent to a peer whose sending queue is full: "dropOldest", "dropByPriority" 
+	 * or "disconnect".
+	 * 
+	 * @see com.ishaanraja.decentchat.io.DecentSocket
+	 * 
+	 * @return The outbound queue policy
+	 */
+	public static String getOutboundQueuePolicy() {
+		return outboundQueuePolicy;
+	}
+	/**
+	 * The maximum number of lines kept in the GUI's chat log. The oldest lines are removed first.
+	 * 
+	 * @return The number of lines of scrollback
+	 */
+	public static int getScrollbackLines() {
+		return scrollbackLines;
+	}
 	/**
 	 * Sets whether the client should use UPNP. 
 	 * 
@@ -196,10 +355,10 @@ public final class DecentConfig {
 		upnpEnabled = enabled;
 		boolean isAvailable = UPnP.isUPnPAvailable() && !UPnP.isMappedTCP(PORT);
 		if(UPnP.isMappedTCP(PORT)) {
-			DecentLogger.write("UPNP cannot be enabled because port 10862 is already mapped");
+			DecentLogger.write(DecentLogger.Level.WARN, "UPNP cannot be enabled because port 10862 is already mapped");
 		}
 		else if(upnpEnabled && !isAvailable) {
-			DecentLogger.write("UPNP cannot be enabled because UPNP is not available on this network");
+			DecentLogger.write(DecentLogger.Level.WARN, "UPNP cannot be enabled because UPNP is not available on this network");
 		}
 		else if(upnpEnabled && isAvailable) {
 			UPnP.openPortTCP(PORT);
@@ -244,9 +403,21 @@ public final class DecentConfig {
 			jsonObj.addProperty("username", username);
 			jsonObj.addProperty("upnpEnabled", upnpEnabled);
 			jsonObj.addProperty("headlessMode", headlessMode);
+			jsonObj.addProperty("selectorTransport", selectorTransport);
+			jsonObj.addProperty("proofOfWorkThreads", proofOfWorkThreads);
+			jsonObj.addProperty("binaryCodec", binaryCodec);
+			jsonObj.addProperty("inventoryGossip", inventoryGossip);
+			jsonObj.addProperty("broadcastTree", broadcastTree);
+			jsonObj.addProperty("virtualThreads", virtualThreads);
+			jsonObj.addProperty("outboundQueueCapacity", outboundQueueCapacity);
+			jsonObj.addProperty("outboundQueuePolicy", outboundQueuePolicy);
+			jsonObj.addProperty("scrollbackLines", scrollbackLines);
+			jsonObj.addProperty("logLevel", logLevel.name());
+			jsonObj.addProperty("logMaxFileSize", logMaxFileSize);
+			jsonObj.addProperty("logMaxFiles", logMaxFiles);
 			filewriter.write(gson.toJson(jsonObj));
 		} catch (IOException e) {
-			DecentLogger.write("Unable to write config to file");
+			DecentLogger.write(DecentLogger.Level.WARN, "Unable to write config to file");
 		}
 	}
 
@@ -1,70 +1,196 @@
 package com.ishaanraja.decentchat.config;
 
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
 
 import com.ishaanraja.decentchat.message.ChatMessage;
 
 /**
- * Handles writing to debug.log file.
+ * Handles writing to the debug.log and chat.log files.
+ *
+ * Writing a line only adds it to a bounded queue, which a single writer thread drains in batches, flushing
+ * once per batch. When the queue is full the line is dropped and counted instead of blocking the caller, so
+ * logging never holds up networking. Both files are appended to and rotated by size and by day, see
+ * RotatingLogFile.
+ *
+ * The logger does not register a shutdown hook of its own. Shutdown hooks run concurrently, so the client
+ * calls close() as the last step of its shutdown instead, after everything it logs while shutting down.
  */
 public final class DecentLogger {
-	
-	private static File logFile;
-	private static File chatLogFile;
-	private static FileWriter logWriter;
-	private static FileWriter chatLogWriter;
-	
+
+	/**
+	 * How important a line in debug.log is. Lines below the level set in the config are not written.
+	 */
+	public enum Level {
+		DEBUG, INFO, WARN, ERROR
+	}
+
+	private static final int QUEUE_CAPACITY = 8192;
+	private static final int MAX_BATCH = 512;
+	private static final long DEFAULT_MAX_BYTES = 10L * 1024 * 1024;
+	private static final int DEFAULT_MAX_FILES = 5;
+
+	/**
+	 * A queued line. The timestamp is taken by the caller, formatting happens on the writer thread.
+	 */
+	private static class Record {
+
+		private final long time;
+		private final Level level;
+		//A String for debug.log or a ChatMessage for chat.log
+		private final Object content;
+
+		private Record(Level level, Object content) {
+			this.time = System.currentTimeMillis();
+			this.level = level;
+			this.content = content;
+		}
+
+	}
+
+	private static final BlockingQueue<Record> queue;
+	private static final AtomicLong dropped;
+	private static final RotatingLogFile logFile;
+	private static final RotatingLogFile chatLogFile;
+	private static volatile Level level;
+	private static final Thread writer;
+
 	private DecentLogger() {}
-	
+
 	static {
-		try {
-			logFile = new File("debug.log");
-			chatLogFile = new File("chat.log");
-			if(!logFile.exists()) {
-				logFile.createNewFile();
-			}
-			if(!chatLogFile.exists()) {
-				chatLogFile.createNewFile();
-			}
-			logWriter = new FileWriter(logFile);
-			chatLogWriter = new FileWriter(chatLogFile, true);
-		}
-		catch(Exception e) {
-			System.out.println("Failed to instantiate logger");
-			e.printStackTrace();
-		}
+		queue = new ArrayBlockingQueue<Record>(QUEUE_CAPACITY);
+		dropped = new AtomicLong();
+		logFile = new RotatingLogFile(new File("debug.log"), DEFAULT_MAX_BYTES, DEFAULT_MAX_FILES);
+		chatLogFile = new RotatingLogFile(new File("chat.log"), DEFAULT_MAX_BYTES, DEFAULT_MAX_FILES);
+		level = Level.INFO;
+		writer = new Thread(DecentLogger::drain, "DecentLogger");
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	/**
+	 * Sets the logging options read from the config.
+	 *
+	 * @param minimumLevel Lines below this level are not written to debug.log
+	 * @param maxBytes The size in bytes after which a log file is rotated
+	 * @param maxFiles The number of rotated files kept of each log
+	 */
+	static void configure(Level minimumLevel, long maxBytes, int maxFiles) {
+		level = minimumLevel;
+		logFile.setLimits(maxBytes, maxFiles);
+		chatLogFile.setLimits(maxBytes, maxFiles);
+	}
+	/**
+	 * Returns whether lines of a level are written, so that expensive log lines can be skipped.
+	 *
+	 * @param l The level
+	 * @return true if lines of that level are written to debug.log
+	 */
+	public static boolean isEnabled(Level l) {
+		return l.compareTo(level) >= 0;
+	}
+	/**
+	 * Writes text with a corresponding date and time to the log file, at the INFO level.
+	 * @param text Text to write to the log file
+	 */
+	public static void write(String text) {
+		write(Level.INFO, text);
 	}
-	
 	/**
 	 * Writes text with a corresponding date and time to the log file.
+	 * @param l The level of the text
 	 * @param text Text to write to the log file
 	 */
-	public synchronized static void write(String text) {
-		try {
-			logWriter.write(new Date()+": "+text+"\n");
-			logWriter.flush();
-		} catch (IOException e) {
-			System.out.println("Failed to write to log file");
-			e.printStackTrace();
+	public static void write(Level l, String text) {
+		if(isEnabled(l)) {
+			enqueue(new Record(l, text));
 		}
 	}
-	
 	/**
 	 * Writes a ChatMessage with a corresponding date and time to the chat.log file.
 	 * @param m ChatMessage to write to the chat.log file
 	 */
-	public synchronized static void write(ChatMessage m) {
+	public static void write(ChatMessage m) {
+		enqueue(new Record(null, m));
+	}
+	private static void enqueue(Record r) {
+		if(!queue.offer(r)) {
+			dropped.incrementAndGet();
+		}
+	}
+	/**
+	 * The writer thread's loop.
+	 */
+	private static void drain() {
+		ArrayList<Record> batch = new ArrayList<Record>(MAX_BATCH);
+		try {
+			while(true) {
+				batch.add(queue.take());
+				queue.drainTo(batch, MAX_BATCH-1);
+				writeBatch(batch);
+				batch.clear();
+			}
+		}
+		catch(InterruptedException e) {
+			//Shutting down, close() writes what is left
+		}
+	}
+	private static synchronized void writeBatch(ArrayList<Record> batch) {
 		try {
-			chatLogWriter.write(new Date()+" - "+m.toString()+"\n");
-			chatLogWriter.flush();
-		} catch (IOException e) {
+			boolean chat = false;
+			for(Record r: batch) {
+				if(r.content instanceof ChatMessage) {
+					chatLogFile.write(new Date(r.time)+" - "+r.content);
+					chat = true;
+				}
+				else {
+					logFile.write(new Date(r.time)+" "+r.level+": "+r.content);
+				}
+			}
+			//Lines queued once space freed up may have been written above, so this only says how many were lost, not where
+			long lost = dropped.getAndSet(0);
+			if(lost > 0) {
+				logFile.write(new Date()+" "+Level.WARN+": "+lost+" log lines were dropped because the log queue was full");
+			}
+			logFile.flush();
+			if(chat) {
+				chatLogFile.flush();
+			}
+		}
+		catch(IOException e) {
 			System.out.println("Failed to write to log file");
 			e.printStackTrace();
 		}
 	}
-
+	/**
+	 * Stops the writer thread, writes every queued line and closes both files. Lines written afterwards are lost, 
+	 * so this is only called once the client has shut down.
+	 */
+	public static void close() {
+		writer.interrupt();
+		try {
+			writer.join(1000);
+		}
+		catch(InterruptedException e) {
+			//Write what is left anyway
+		}
+		ArrayList<Record> rest = new ArrayList<Record>();
+		queue.drainTo(rest);
+		writeBatch(rest);
+		synchronized(DecentLogger.class) {
+			try {
+				logFile.close();
+				chatLogFile.close();
+			}
+			catch(IOException e) {
+				e.printStackTrace();
+			}
+		}
+	}
 
 }
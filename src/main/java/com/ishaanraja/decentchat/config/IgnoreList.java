@@ -37,7 +37,7 @@ public final class IgnoreList {
 			}
 		}
 		catch(Exception e) {
-			DecentLogger.write("Could not load ignorelist.txt");
+			DecentLogger.write(DecentLogger.Level.WARN, "Could not load ignorelist.txt");
 		}
 	}
 	
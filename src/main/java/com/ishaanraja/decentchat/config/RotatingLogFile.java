@@ -0,0 +1,106 @@
+package com.ishaanraja.decentchat.config;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+
+/**
+ * A log file that is appended to, and rotated when it grows past a maximum size or when the day changes.
+ *
+ * Rotating renames the file to name.1, name.1 to name.2 and so on, deleting the oldest file once the maximum
+ * number of old files is reached. If rotating fails, for example because another process holds one of the files 
+ * open, writing carries on in the current file and rotation is tried again once it has grown by another maxBytes.
+ * Apart from setLimits(), only the DecentLogger writer thread uses it, so it is not thread safe.
+ */
+class RotatingLogFile {
+
+	private final File file;
+	private volatile long maxBytes;
+	private volatile int maxFiles;
+	private Writer writer;
+	private long size;
+	private LocalDate openedOn;
+
+	/**
+	 * @param file The log file
+	 * @param maxBytes The size in bytes after which the file is rotated
+	 * @param maxFiles The number of rotated files to keep, at least 1
+	 */
+	RotatingLogFile(File file, long maxBytes, int maxFiles) {
+		this.file = file;
+		this.maxBytes = maxBytes;
+		this.maxFiles = maxFiles;
+	}
+
+	void setLimits(long maxBytes, int maxFiles) {
+		this.maxBytes = maxBytes;
+		this.maxFiles = maxFiles;
+	}
+	/**
+	 * Appends a line to the log file, rotating it first if needed. The line is buffered until flush().
+	 *
+	 * @param line The line to write, without the line separator
+	 * @throws IOException If the file could not be written
+	 */
+	void write(String line) throws IOException {
+		if(writer == null) {
+			open();
+		}
+		if(size >= maxBytes || !LocalDate.now().equals(openedOn)) {
+			rotate();
+		}
+		writer.write(line);
+		writer.write('\n');
+		//Close enough for rotation, log lines are almost always ASCII
+		size += line.length()+1;
+	}
+	void flush() throws IOException {
+		if(writer != null) {
+			writer.flush();
+		}
+	}
+	void close() throws IOException {
+		if(writer != null) {
+			writer.close();
+			writer = null;
+		}
+	}
+	private void open() throws IOException {
+		writer = new BufferedWriter(new FileWriter(file, true));
+		size = file.length();
+		//A file left over from an earlier day is rotated on the first write of today
+		openedOn = file.length() > 0 ? Instant.ofEpochMilli(file.lastModified()).atZone(ZoneId.systemDefault()).toLocalDate() : LocalDate.now();
+	}
+	private void rotate() throws IOException {
+		close();
+		try {
+			Files.deleteIfExists(rotated(maxFiles).toPath());
+			for(int i=maxFiles-1;i>=1;i--) {
+				File f = rotated(i);
+				if(f.exists()) {
+					Files.move(f.toPath(), rotated(i+1).toPath(), StandardCopyOption.REPLACE_EXISTING);
+				}
+			}
+			Files.move(file.toPath(), rotated(1).toPath(), StandardCopyOption.REPLACE_EXISTING);
+			open();
+		}
+		catch(IOException e) {
+			//The logger cannot log its own failures, and losing the log is worse than an oversized file
+			System.out.println("Failed to rotate "+file.getName()+" because of "+e.getMessage());
+			open();
+			size = 0;
+			openedOn = LocalDate.now();
+		}
+	}
+	private File rotated(int index) {
+		return new File(file.getPath()+"."+index);
+	}
+
+}
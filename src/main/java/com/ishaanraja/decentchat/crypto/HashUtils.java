@@ -43,7 +43,7 @@ public class HashUtils {
 			String hashRepresentation = sha256(pubKey);
 			return hashRepresentation.substring(0, DecentConfig.IDENTIFIER_LENGTH);
 		} catch (NoSuchAlgorithmException e) {
-			DecentLogger.write("Could not find algorithm SHA-256");
+			DecentLogger.write(DecentLogger.Level.WARN, "Could not find algorithm SHA-256");
 		}
 		return null;
 	}
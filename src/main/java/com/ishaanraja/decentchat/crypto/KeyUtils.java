@@ -88,7 +88,7 @@ public class KeyUtils {
 			return kf.generatePublic(X509publicKey);
 		} 
 		catch (NoSuchAlgorithmException | InvalidKeySpecException e) {
-			DecentLogger.write("Could not parse public key string");
+			DecentLogger.write(DecentLogger.Level.WARN, "Could not parse public key string");
 			return null;
 		}
 	}
@@ -171,7 +171,7 @@ public class KeyUtils {
 			privwriter.close();
 		}
 		catch(Exception e) {
-			DecentLogger.write("Unable to create "+privateKeyFile.getName());
+			DecentLogger.write(DecentLogger.Level.WARN, "Unable to create "+privateKeyFile.getName());
 		}
 	}
 	/**
@@ -192,7 +192,7 @@ public class KeyUtils {
 			pubwriter.close();
 		}
 		catch(Exception e) {
-			DecentLogger.write("Unable to create "+publicKeyFile.getName());
+			DecentLogger.write(DecentLogger.Level.WARN, "Unable to create "+publicKeyFile.getName());
 		}
 	}
 
@@ -0,0 +1,173 @@
+package com.ishaanraja.decentchat.crypto;
+
+import java.security.PublicKey;
+import java.security.Signature;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.ishaanraja.decentchat.config.DecentConfig;
+
+/**
+ * A bounded, least recently used cache of parsed public keys, keyed by their Base 64 String representation.
+ *
+ * Active users send the same public key with every message, so parsing it, hashing it for its identifier
+ * and creating a new Signature object to verify every single message is wasted work.
+ * Entries are evicted once the cache holds more than MAX_ENTRIES keys or when a key has not been used for
+ * the historical timestamp tolerance.
+ */
+public final class PublicKeyCache {
+
+	private static final int MAX_ENTRIES = 1024;
+	private static final long EXPIRY_MILLIS = DecentConfig.HISTORICAL_TIMESTAMP_TOLERANCE*1000;
+
+	private static class CachedKey {
+
+		private PublicKey publicKey;
+		private String identifier;
+		private Queue<Signature> verifiers;
+		private volatile long lastAccess;
+
+		private CachedKey(PublicKey publicKey, String identifier) {
+			this.publicKey = publicKey;
+			this.identifier = identifier;
+			this.verifiers = new ConcurrentLinkedQueue<Signature>();
+			this.lastAccess = System.currentTimeMillis();
+		}
+
+	}
+
+	private static Map<String, CachedKey> cache;
+	private static LongAdder hits;
+	private static LongAdder misses;
+
+	private PublicKeyCache() {}
+
+	static {
+		cache = new LinkedHashMap<String, CachedKey>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, CachedKey> eldest) {
+				return size() > MAX_ENTRIES || isExpired(eldest.getValue(), System.currentTimeMillis());
+			}
+		};
+		hits = new LongAdder();
+		misses = new LongAdder();
+	}
+
+	/**
+	 * Returns the PublicKey object of a Base 64 encoded public key, parsing it only if it is not already cached.
+	 *
+	 * @param pubKey The Base 64 encoded representation of the public key
+	 * @return The PublicKey object or null if the key could not be parsed
+	 */
+	public static PublicKey getPublicKey(String pubKey) {
+		CachedKey e = getCachedKey(pubKey);
+		return e == null ? null : e.publicKey;
+	}
+	/**
+	 * Returns the 10 character identifier of a Base 64 encoded public key.
+	 *
+	 * @see com.ishaanraja.decentchat.crypto.HashUtils#getIdentifier(String)
+	 *
+	 * @param pubKey The Base 64 encoded representation of the public key
+	 * @return The first 10 characters of the SHA-256 hash of the public key
+	 */
+	public static String getIdentifier(String pubKey) {
+		CachedKey e = getCachedKey(pubKey);
+		//Even keys that cannot be parsed have an identifier
+		return e == null ? HashUtils.getIdentifier(pubKey) : e.identifier;
+	}
+	/**
+	 * Returns whether a given public key signed a given message, reusing the cached PublicKey and Signature objects.
+	 *
+	 * @param plainText The text that was purportedly signed.
+	 * @param signature The Base 64 String representation of the message's signature.
+	 * @param pubKey The Base 64 encoded representation of the sender's public key
+	 * @return true/false if the given public key (and its corresponding private key) signed that message.
+	 * @throws Exception
+	 */
+	public static boolean verify(String plainText, String signature, String pubKey) throws Exception {
+		CachedKey e = getCachedKey(pubKey);
+		if(e == null) {
+			return false;
+		}
+		Signature publicSignature = e.verifiers.poll();
+		if(publicSignature == null) {
+			publicSignature = Signature.getInstance("SHA256withRSA");
+		}
+		publicSignature.initVerify(e.publicKey);
+		publicSignature.update(plainText.getBytes("UTF-8"));
+		boolean valid = publicSignature.verify(Base64.getDecoder().decode(signature));
+		//Signature objects are not thread safe, so each one is only handed to one verifying thread at a time
+		e.verifiers.offer(publicSignature);
+		return valid;
+	}
+	private static CachedKey getCachedKey(String pubKey) {
+		if(pubKey == null) {
+			return null;
+		}
+		long now = System.currentTimeMillis();
+		CachedKey e;
+		synchronized(cache) {
+			e = cache.get(pubKey);
+		}
+		if(e != null && !isExpired(e, now)) {
+			e.lastAccess = now;
+			hits.increment();
+			return e;
+		}
+		misses.increment();
+		//Parse outside of the lock, two threads parsing the same new key at once is harmless
+		PublicKey publicKey;
+		try {
+			publicKey = KeyUtils.getPublicKeyFromString(pubKey);
+		}
+		catch(IllegalArgumentException ex) {
+			//Not valid Base 64
+			return null;
+		}
+		if(publicKey == null) {
+			return null;
+		}
+		e = new CachedKey(publicKey, HashUtils.getIdentifier(pubKey));
+		synchronized(cache) {
+			cache.put(pubKey, e);
+		}
+		return e;
+	}
+	private static boolean isExpired(CachedKey e, long now) {
+		return now-e.lastAccess > EXPIRY_MILLIS;
+	}
+	/**
+	 * Returns the number of lookups that were answered from the cache.
+	 *
+	 * @return the number of cache hits
+	 */
+	public static long getHits() {
+		return hits.sum();
+	}
+	/**
+	 * Returns the number of lookups that required parsing a public key.
+	 *
+	 * @return the number of cache misses
+	 */
+	public static long getMisses() {
+		return misses.sum();
+	}
+	/**
+	 * Returns the number of public keys currently cached.
+	 *
+	 * @return the size of the cache
+	 */
+	public static int size() {
+		synchronized(cache) {
+			return cache.size();
+		}
+	}
+
+}
@@ -11,27 +11,30 @@ import com.ishaanraja.decentchat.message.Message;
 public abstract class DecentCallback {
 	
 	/**
-	 * The callback method for when a message is received from a DecentSocket. 
+	 * The callback method for when a message is received from a DecentSocket. The message has already been 
+	 * decoded into its Message subclass, regardless of whether it arrived as JSON or as a binary frame.
 	 * 
 	 * @param message The message that was received
 	 * @param origin The DecentSocket it came from
 	 * @return A response Message or null if sending no response
 	 */
-	public abstract Message onSocketMessageReceived(String message, DecentSocket origin);
+	public abstract Message onSocketMessageReceived(Message message, DecentSocket origin);
 	/**
-	 * Removes an InetAddress from the client's peers.
+	 * Removes a DecentSocket from the client's peers. Does nothing if a different socket is the peer 
+	 * at its address.
 	 * 
-	 * @param address
+	 * @param socket The DecentSocket to remove
 	 */
-	public abstract void removeSocketPeer(InetAddress address);
+	public abstract void removeSocketPeer(DecentSocket socket);
 	
 	/**
 	 * Adds a DecentSocket to client's peers.
 	 * 
 	 * @param socket The DecentSocket to add
+	 * @return true if the socket was added, false if it can not be a peer (e.g. the peers list filled up)
 	 */
 	
-	public abstract void addSocketPeer(DecentSocket socket);
+	public abstract boolean addSocketPeer(DecentSocket socket);
 	
 	/**
 	 * Returns whether the peer is valid and can be added to the client's peers. 
@@ -41,5 +44,33 @@ public abstract class DecentCallback {
 	 */
 	
 	public abstract boolean canAddSocketPeer(InetAddress address);
+	
+	/**
+	 * Returns whether a chat message with the given signature has already been seen. Used to drop 
+	 * duplicate chat messages before decoding them. By default, nothing is considered seen.
+	 * 
+	 * @param signature The raw bytes of the chat message's signature
+	 * @return true/false if the signature has been seen
+	 */
+	public boolean isSeenSignature(byte[] signature) {
+		return false;
+	}
+	/**
+	 * Called when a chat message that was already seen is dropped before being decoded. By default, nothing is done.
+	 * 
+	 * @param origin The DecentSocket the duplicate came from
+	 */
+	public void onDuplicateReceived(DecentSocket origin) {
+		
+	}
+	/**
+	 * Called when a candidate peer could not be connected to, or an existing peer stopped responding to pings. 
+	 * By default, nothing is done.
+	 * 
+	 * @param address The address that could not be reached
+	 */
+	public void onPeerUnreachable(InetAddress address) {
+		
+	}
 
 }
@@ -3,9 +3,11 @@ package com.ishaanraja.decentchat.io;
 import java.io.IOException;
 import java.net.BindException;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
-import java.util.Map;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
 
 import com.ishaanraja.decentchat.config.DecentConfig;
 import com.ishaanraja.decentchat.config.DecentLogger;
@@ -17,7 +19,8 @@ public class DecentListener implements Runnable {
 	private static final int PONG_TIMEOUT = 500;
 	
 	private DecentCallback callback;
-	private Map<InetAddress, DecentSocket> peers;
+	private PeerRegistry peers;
+	private DecentSelector selector;
 	private boolean online;
 	
 	/**
@@ -25,35 +28,29 @@ public class DecentListener implements Runnable {
 	 * any incoming connections.
 	 * 
 	 * @param callback The DecentCallback object that will be called on certain events
-	 * @param peers A Map of the client's peers
+	 * @param peers The client's peers
+	 * @param selector The DecentSelector accepted connections are handed to, or null to give every connection its own thread
 	 */
-	public DecentListener(DecentCallback callback, Map<InetAddress, DecentSocket> peers) {
+	public DecentListener(DecentCallback callback, PeerRegistry peers, DecentSelector selector) {
 		this.callback = callback;
 		this.peers = peers;
+		this.selector = selector;
 		online = true;
-		new Thread(this).start();
+		DecentThreads.start(this, "DecentListener");
 	}
 
 	@Override
 	public void run() {
 		try {
-			ServerSocket serverSocket = new ServerSocket(DecentConfig.PORT);
-			while(online) {
-				Socket socket = serverSocket.accept();
-				//If someone already peered with reconnects, the client checks to see if the existing socket is dead
-				//If it is, it removes it and creates a new one
-				if(peers.containsKey(socket.getInetAddress())) {
-					DecentSocket s = peers.get(socket.getInetAddress());
-					if(!s.testPing(new PingMessage(), PONG_TIMEOUT)) {
-						s.stop();
-					}
-				}
-				new DecentSocket(callback, socket);
+			if(selector != null) {
+				acceptChannels();
+			}
+			else {
+				acceptSockets();
 			}
-			serverSocket.close();
 		}
 		catch(BindException e) {
-			DecentLogger.write("Unable to bind to port (are there two instances running on this machine?)");
+			DecentLogger.write(DecentLogger.Level.ERROR, "Unable to bind to port (are there two instances running on this machine?)");
 			e.printStackTrace();
 		}
 		catch(IOException e) {
@@ -61,6 +58,53 @@ public class DecentListener implements Runnable {
 		}
 		
 	}
+	private void acceptSockets() throws IOException {
+		ServerSocket serverSocket = new ServerSocket(DecentConfig.PORT);
+		while(online) {
+			Socket socket = serverSocket.accept();
+			//Checking an existing peer waits for its pong, so it is done off the accepting thread
+			DecentThreads.start(() -> {
+				checkExistingPeer(socket.getInetAddress());
+				new DecentSocket(callback, socket);
+			}, "DecentListener "+socket.getInetAddress().getHostAddress());
+		}
+		serverSocket.close();
+	}
+	/**
+	 * Accepts connections on a ServerSocketChannel and registers them with the DecentSelector.
+	 */
+	private void acceptChannels() throws IOException {
+		ServerSocketChannel serverChannel = ServerSocketChannel.open();
+		serverChannel.bind(new InetSocketAddress(DecentConfig.PORT));
+		while(online) {
+			SocketChannel channel = serverChannel.accept();
+			InetAddress address = channel.socket().getInetAddress();
+			DecentThreads.start(() -> {
+				checkExistingPeer(address);
+				try {
+					selector.register(callback, channel);
+				}
+				catch(IOException e) {
+					DecentLogger.write(DecentLogger.Level.WARN, "Could not register connection from "+address.getHostAddress()+" because of "+e.getMessage());
+				}
+			}, "DecentListener "+address.getHostAddress());
+		}
+		serverChannel.close();
+	}
+	/**
+	 * If someone already peered with reconnects, the client checks to see if the existing socket is dead.
+	 * If it is, it removes it so that a new one can be created.
+	 * 
+	 * @param address The address of the incoming connection
+	 */
+	private void checkExistingPeer(InetAddress address) {
+		DecentSocket s = peers.get(address);
+		if(s != null) {
+			if(!s.testPing(new PingMessage(), PONG_TIMEOUT)) {
+				s.stop();
+			}
+		}
+	}
 	/**
 	 * Stops this thread from running.
 	 */
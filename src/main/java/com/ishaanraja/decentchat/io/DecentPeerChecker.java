@@ -1,12 +1,19 @@
 package com.ishaanraja.decentchat.io;
 
+import java.io.IOException;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.nio.channels.SocketChannel;
 import java.util.ArrayList;
-import java.util.Map;
-import java.util.Queue;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import com.ishaanraja.decentchat.config.DecentConfig;
 import com.ishaanraja.decentchat.config.DecentLogger;
@@ -19,6 +26,10 @@ import com.ishaanraja.decentchat.message.PingMessage;
  * This is a thread that contains a queue of peers to check. 
  * For every given candidate peer, it sends a ping message and waits a
  * prescribed number of seconds for a pong message in response.
+ * Up to MAX_PARALLEL_PROBES candidates are checked at the same time, and an address that is 
+ * already queued or being checked is not queued again. Each check runs on a virtual thread of 
+ * its own if DecentThreads uses virtual threads, or else on a pool of at most MAX_PARALLEL_PROBES 
+ * platform threads, which exit after PROBE_THREAD_IDLE_SECONDS without work.
  * 
  * If the client is online (and responds promptly), a new DecentSocket object is constructed
  * if one does not exist already.
@@ -27,37 +38,92 @@ public class DecentPeerChecker implements Runnable {
 	
 	//Timeout in milliseconds
 	private static final int PONG_TIMEOUT = 2000;
+	private static final int MAX_PARALLEL_PROBES = 32;
+	private static final long PROBE_THREAD_IDLE_SECONDS = 60;
 	
-	private Map<InetAddress, DecentSocket> peersMap;
-	private Queue<InetAddress> checkQueue;
+	private PeerRegistry peers;
+	private BlockingQueue<InetAddress> checkQueue;
+	//Addresses that are queued or being checked
+	private Set<InetAddress> pending;
+	private Semaphore probes;
+	//Runs the checks on platform threads, or null if every check gets a virtual thread
+	private ThreadPoolExecutor probePool;
 	private DecentCallback callback;
-	private boolean online;
+	private DecentSelector selector;
+	private volatile boolean online;
+	private Thread thread;
 	
-	public DecentPeerChecker(DecentCallback callback, Map<InetAddress, DecentSocket> peersMap) {
-		this.peersMap = peersMap;
+	/**
+	 * Constructs a new DecentPeerChecker and starts its thread.
+	 * 
+	 * @param callback The DecentCallback object that will be called on certain events
+	 * @param peers The client's peers
+	 * @param selector The DecentSelector new connections are handed to, or null to give every connection its own thread
+	 */
+	public DecentPeerChecker(DecentCallback callback, PeerRegistry peers, DecentSelector selector) {
+		this.peers = peers;
+		this.selector = selector;
 		checkQueue = new LinkedBlockingQueue<InetAddress>();
+		pending = Collections.newSetFromMap(new ConcurrentHashMap<InetAddress, Boolean>());
+		probes = new Semaphore(MAX_PARALLEL_PROBES);
+		if(!DecentThreads.isVirtual()) {
+			probePool = new ThreadPoolExecutor(MAX_PARALLEL_PROBES, MAX_PARALLEL_PROBES, PROBE_THREAD_IDLE_SECONDS, TimeUnit.SECONDS, 
+					new LinkedBlockingQueue<Runnable>(), r -> {
+				Thread t = new Thread(r, "DecentPeerChecker probe");
+				t.setDaemon(true);
+				return t;
+			});
+			probePool.allowCoreThreadTimeOut(true);
+		}
 		this.callback = callback;
 		online = true;
-		new Thread(this).start();
+		thread = DecentThreads.start(this, "DecentPeerChecker");
 	}
 
 	@Override
 	public void run() {
-		while(online) {
-			while(!checkQueue.isEmpty()) {
-				InetAddress address = checkQueue.poll();
-				if(peersMap.containsKey(address)) {
-					DecentSocket s = peersMap.get(address);
-					boolean isPeerOnline = s.testPing(new PingMessage(), PONG_TIMEOUT);
-					if(!isPeerOnline) {
-						s.stop();
+		try {
+			while(online) {
+				InetAddress address = checkQueue.take();
+				probes.acquire();
+				Runnable probe = () -> {
+					try {
+						check(address);
+					}
+					finally {
+						pending.remove(address);
+						probes.release();
 					}
+				};
+				if(probePool != null) {
+					probePool.execute(probe);
 				}
 				else {
-					isOnline(address);
+					DecentThreads.start(probe, "DecentPeerChecker "+address.getHostAddress());
 				}
 			}
 		}
+		catch(InterruptedException e) {
+			//Stopped
+		}
+	}
+	/**
+	 * Pings an existing peer and stops it if it does not respond, or connects to a candidate peer.
+	 * 
+	 * @param address The address to check
+	 */
+	private void check(InetAddress address) {
+		DecentSocket s = peers.get(address);
+		if(s != null) {
+			boolean isPeerOnline = s.testPing(new PingMessage(), PONG_TIMEOUT);
+			if(!isPeerOnline) {
+				callback.onPeerUnreachable(address);
+				s.stop();
+			}
+		}
+		else if(!isOnline(address)) {
+			callback.onPeerUnreachable(address);
+		}
 	}
 	/**
 	 * Contacts a given InetAddress, sends it a ping message and waits for a response.
@@ -69,10 +135,7 @@ public class DecentPeerChecker implements Runnable {
 	 */
 	private boolean isOnline(InetAddress host) {
 		try {
-			Socket socket = new Socket();
-			//.connect() for connection timeout
-			socket.connect(new InetSocketAddress(host, DecentConfig.PORT), PONG_TIMEOUT);
-			DecentSocket s = new DecentSocket(callback, socket);
+			DecentSocket s = connect(host);
 			if(s.testPing(new PingMessage(), PONG_TIMEOUT)) {
 				return true;
 			}
@@ -82,12 +145,38 @@ public class DecentPeerChecker implements Runnable {
 		} catch (Exception e) {
 			//Just allow it to silently fail - sometimes peers don't accept messages
 			if(e.getMessage() != null && e.getMessage().contains("Network is unreachable (connect failed)")) {
-				DecentLogger.write("Network is unreachable (connect failed)");
+				DecentLogger.write(DecentLogger.Level.WARN, "Network is unreachable (connect failed)");
 				return true;
 			}
 		}
 		return false;
 	}
+	/**
+	 * Opens a connection to the given host, on its own thread or on the DecentSelector.
+	 * 
+	 * @param host The host to connect to
+	 * @return The DecentSocket managing the new connection
+	 * @throws IOException If the host could not be connected to within PONG_TIMEOUT
+	 */
+	private DecentSocket connect(InetAddress host) throws IOException {
+		InetSocketAddress address = new InetSocketAddress(host, DecentConfig.PORT);
+		if(selector != null) {
+			SocketChannel channel = SocketChannel.open();
+			//Connect in blocking mode since SocketChannel.connect() has no timeout, the selector switches it to non-blocking
+			try {
+				channel.socket().connect(address, PONG_TIMEOUT);
+			}
+			catch(IOException e) {
+				channel.close();
+				throw e;
+			}
+			return selector.register(callback, channel);
+		}
+		Socket socket = new Socket();
+		//.connect() for connection timeout
+		socket.connect(address, PONG_TIMEOUT);
+		return new DecentSocket(callback, socket);
+	}
 	/**
 	 * Adds a list of InetAddresses to the checking queue.
 	 * 
@@ -95,28 +184,34 @@ public class DecentPeerChecker implements Runnable {
 	 */
 	public void checkList(ArrayList<InetAddress> list) {
 		for(InetAddress p: list) {
-			checkQueue.add(p);
+			checkAddress(p);
 		}
 	}
 	/**
-	 * Adds a given InetAddress to the checking queue.
+	 * Adds a given InetAddress to the checking queue, unless it is already queued or being checked.
 	 * 
 	 * @param address the InetAddress to check if is online or not
 	 */
 	public void checkAddress(InetAddress address) {
-		checkQueue.add(address);
+		if(pending.add(address)) {
+			checkQueue.add(address);
+		}
 	}
 	/**
-	 * Returns the length of the checking queue.
+	 * Returns the number of addresses that are queued or being checked.
 	 * 
 	 * @return the length of the checking queue
 	 */
 	public int getQueueLength() {
-		return checkQueue.size();
+		return pending.size();
 	}
 	
 	public void stop() {
 		online = false;
+		thread.interrupt();
+		if(probePool != null) {
+			probePool.shutdownNow();
+		}
 	}
 
 }
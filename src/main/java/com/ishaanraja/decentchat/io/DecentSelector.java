@@ -0,0 +1,207 @@
+package com.ishaanraja.decentchat.io;
+
+import java.io.IOException;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+import com.ishaanraja.decentchat.config.DecentLogger;
+
+/**
+ * DecentSelector is a single event loop thread that reads from and writes to every
+ * DecentSelectorSocket registered with it using a java.nio Selector.
+ *
+ * This is used in place of the one thread per DecentSocket model when selectorTransport
+ * is set to true in the config, allowing one node to hold thousands of peers without
+ * thousands of threads.
+ *
+ * Received messages other than pings and pongs are handed to the callback on a small pool of worker 
+ * threads, see DecentSelectorSocket.
+ */
+public class DecentSelector implements Runnable {
+
+	private Selector selector;
+	private Queue<DecentSelectorSocket> pendingRegistrations;
+	//Sockets that other threads have queued bytes for, whose interest sets still need OP_WRITE
+	private Queue<DecentSelectorSocket> pendingWrites;
+	private Set<DecentSelectorSocket> sockets;
+	private ExecutorService workers;
+	private volatile boolean online;
+
+	/**
+	 * Opens a new Selector and starts its event loop thread.
+	 *
+	 * @throws IOException If the Selector could not be opened
+	 */
+	public DecentSelector() throws IOException {
+		selector = Selector.open();
+		pendingRegistrations = new ConcurrentLinkedQueue<DecentSelectorSocket>();
+		pendingWrites = new ConcurrentLinkedQueue<DecentSelectorSocket>();
+		sockets = ConcurrentHashMap.newKeySet();
+		workers = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), r -> {
+			Thread t = new Thread(r, "DecentSelector worker");
+			t.setDaemon(true);
+			return t;
+		});
+		online = true;
+		Thread loop = new Thread(this, "DecentSelector");
+		loop.setDaemon(true);
+		loop.start();
+	}
+
+	@Override
+	public void run() {
+		while(online) {
+			try {
+				selector.select(DecentSocket.NORMAL_TIMEOUT);
+				registerPending();
+				applyPendingWrites();
+				Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+				while(keys.hasNext()) {
+					SelectionKey key = keys.next();
+					keys.remove();
+					DecentSelectorSocket s = (DecentSelectorSocket) key.attachment();
+					try {
+						if(key.isValid() && key.isReadable()) {
+							s.onReadable();
+						}
+						if(key.isValid() && key.isWritable()) {
+							s.onWritable();
+						}
+					}
+					catch(CancelledKeyException e) {
+						//The socket was stopped by another thread while it was being served
+					}
+				}
+				closeIdleSockets();
+			}
+			catch(IOException e) {
+				DecentLogger.write(DecentLogger.Level.WARN, "DecentSelector failed to select because of "+e.getMessage());
+			}
+		}
+		try {
+			selector.close();
+		} catch (IOException e) {
+
+		}
+	}
+	/**
+	 * Wraps a connected SocketChannel in a DecentSelectorSocket and hands it to the event loop.
+	 *
+	 * @param callback The DecentCallback object that will be called on certain events
+	 * @param channel A connected SocketChannel
+	 * @return The DecentSocket that now manages the channel
+	 * @throws IOException If the channel could not be put into non-blocking mode
+	 */
+	public DecentSocket register(DecentCallback callback, SocketChannel channel) throws IOException {
+		channel.configureBlocking(false);
+		channel.socket().setKeepAlive(true);
+		DecentSelectorSocket s = new DecentSelectorSocket(callback, channel, this);
+		//Only a fully constructed socket may become a peer, as peers are used by other threads right away
+		s.register();
+		pendingRegistrations.add(s);
+		selector.wakeup();
+		return s;
+	}
+	/**
+	 * Registers every socket handed over by other threads since the last select.
+	 * This has to happen on the event loop thread, as SelectableChannel.register() blocks while
+	 * another thread is inside select().
+	 */
+	private void registerPending() {
+		DecentSelectorSocket s = pendingRegistrations.poll();
+		while(s != null) {
+			try {
+				SelectionKey key = s.getChannel().register(selector, SelectionKey.OP_READ, s);
+				s.setSelectionKey(key);
+				sockets.add(s);
+			}
+			catch(ClosedChannelException e) {
+				s.stop();
+			}
+			s = pendingRegistrations.poll();
+		}
+	}
+	/**
+	 * Adds OP_WRITE to the interest sets of the sockets that other threads queued bytes for. Like registering, 
+	 * this is done on the event loop thread, so that interest sets are only ever changed by one thread.
+	 */
+	private void applyPendingWrites() {
+		DecentSelectorSocket s = pendingWrites.poll();
+		while(s != null) {
+			s.enableWrite();
+			s = pendingWrites.poll();
+		}
+	}
+	/**
+	 * Closes any one-time (non peer) sockets that have had nothing left to say for longer
+	 * than the normal read timeout, mirroring the behaviour of a blocking DecentSocket.
+	 */
+	private void closeIdleSockets() {
+		long now = System.currentTimeMillis();
+		Iterator<DecentSelectorSocket> itr = sockets.iterator();
+		while(itr.hasNext()) {
+			DecentSelectorSocket s = itr.next();
+			if(!s.isOpen()) {
+				//Closed by abort(), or by stop() in which case this does nothing
+				if(s.isOnline()) {
+					s.stop();
+				}
+				itr.remove();
+			}
+			else if(s.isIdle(now)) {
+				s.stop();
+				itr.remove();
+			}
+		}
+	}
+	/**
+	 * Asks the event loop to write a socket's queued bytes. Safe to call from any thread.
+	 *
+	 * @param s The socket that has bytes to write
+	 */
+	protected void requestWrite(DecentSelectorSocket s) {
+		pendingWrites.add(s);
+		selector.wakeup();
+	}
+	/**
+	 * Runs a task on a worker thread instead of the event loop. Tasks given after stop() are not run.
+	 *
+	 * @param task The task to run
+	 */
+	protected void execute(Runnable task) {
+		try {
+			workers.execute(task);
+		}
+		catch(RejectedExecutionException e) {
+			//Stopped
+		}
+	}
+	/**
+	 * Returns the number of sockets currently served by this event loop.
+	 *
+	 * @return the number of registered sockets
+	 */
+	public int getSocketCount() {
+		return sockets.size();
+	}
+	/**
+	 * Stops the event loop. Sockets are expected to have been stopped beforehand.
+	 */
+	public void stop() {
+		online = false;
+		selector.wakeup();
+		workers.shutdownNow();
+	}
+
+}
@@ -0,0 +1,313 @@
+package com.ishaanraja.decentchat.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.ishaanraja.decentchat.config.DecentLogger;
+import com.ishaanraja.decentchat.message.EncodedMessage;
+import com.ishaanraja.decentchat.message.Message;
+
+/**
+ * A DecentSocket whose reads and writes are driven by a DecentSelector event loop
+ * instead of its own thread.
+ *
+ * The wire format is identical to a regular DecentSocket (newline delimited JSON or binary frames), 
+ * so peers cannot tell which transport is in use.
+ * 
+ * Pings and pongs are handled on the event loop. Every other message is handed to the callback on one of 
+ * the selector's worker threads, so that slow callbacks (such as verifying a history message) do not hold 
+ * up the other sockets. Messages from one socket are still handled one at a time, in the order received.
+ */
+public class DecentSelectorSocket extends DecentSocket {
+
+	private static final int READ_BUFFER_SIZE = 8192;
+	private static final int MAX_WRITE_BATCH = 64;
+	/**
+	 * The most received messages that may wait for a worker. A peer that sends faster than its messages 
+	 * can be handled is dropped.
+	 */
+	private static final int MAX_PENDING_INBOUND = 4096;
+
+	private SocketChannel channel;
+	private DecentSelector selector;
+	private SelectionKey key;
+	private ByteBuffer readBuffer;
+	private Queue<ByteBuffer> writeQueue;
+	private ByteBuffer[] writeBatch;
+	//Set while this socket waits in the selector's pending writes, so that it is queued there only once
+	private AtomicBoolean writeRequested;
+	//Received messages waiting for a worker, and whether a worker is handling them
+	private Queue<Message> inbound;
+	private AtomicInteger inboundCount;
+	private AtomicBoolean dispatching;
+	private volatile long lastActivity;
+
+	/**
+	 * Constructs a new DecentSelectorSocket. This neither registers the channel with the
+	 * selector nor adds the socket as a peer, both are done by DecentSelector.register().
+	 *
+	 * @param callback The DecentCallback object that will be called on certain events
+	 * @param channel The connected, non-blocking SocketChannel to communicate with
+	 * @param selector The event loop that will serve this socket
+	 */
+	protected DecentSelectorSocket(DecentCallback callback, SocketChannel channel, DecentSelector selector) {
+		super(callback, channel.socket().getInetAddress());
+		this.channel = channel;
+		this.selector = selector;
+		this.readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+		this.writeQueue = new ConcurrentLinkedQueue<ByteBuffer>();
+		this.writeBatch = new ByteBuffer[MAX_WRITE_BATCH];
+		this.writeRequested = new AtomicBoolean();
+		this.inbound = new ConcurrentLinkedQueue<Message>();
+		this.inboundCount = new AtomicInteger();
+		this.dispatching = new AtomicBoolean();
+		this.lastActivity = System.currentTimeMillis();
+	}
+
+	protected SocketChannel getChannel() {
+		return channel;
+	}
+
+	/**
+	 * Called by the event loop once the channel is registered.
+	 * 
+	 * @param key The channel's key
+	 */
+	protected void setSelectionKey(SelectionKey key) {
+		this.key = key;
+		//Anything queued before registration (e.g. the initial peerAsk) still needs to go out
+		if(!writeQueue.isEmpty() || !messageQueue.isEmpty() || hasPendingInventory()) {
+			key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+		}
+	}
+	/**
+	 * Called by the event loop to add OP_WRITE to the interest set, after another thread requested a write.
+	 */
+	protected void enableWrite() {
+		writeRequested.set(false);
+		SelectionKey k = key;
+		if(k != null && k.isValid()) {
+			try {
+				k.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+			}
+			catch(CancelledKeyException e) {
+				//Stopped by another thread meanwhile
+			}
+		}
+	}
+	/**
+	 * Called by the event loop when the channel has bytes to read. Splits the bytes into frames
+	 * and handles each complete frame.
+	 */
+	protected void onReadable() {
+		try {
+			int read = channel.read(readBuffer);
+			if(read == -1) {
+				stop();
+				return;
+			}
+			lastActivity = System.currentTimeMillis();
+			readBuffer.flip();
+			try {
+				frameReader.read(readBuffer.array(), 0, readBuffer.limit());
+			}
+			catch(IOException e) {
+				getStats().countInvalid();
+				DecentLogger.write(DecentLogger.Level.WARN, "Dropping "+getInetAddress().getHostAddress()+" because of "+e.getMessage());
+				stop();
+			}
+			readBuffer.clear();
+		}
+		catch(IOException e) {
+			stop();
+		}
+	}
+	/**
+	 * Called by the event loop when the channel can accept more bytes. Serializes any queued
+	 * messages and writes as much as the channel will take, up to MAX_WRITE_BATCH buffers 
+	 * per system call.
+	 */
+	protected void onWritable() {
+		flushMessageQueue();
+		try {
+			int count = fillWriteBatch();
+			while(count > 0) {
+				channel.write(writeBatch, 0, count);
+				for(int i=0;i<count;i++) {
+					if(writeBatch[i].hasRemaining()) {
+						//Kernel send buffer is full, wait for the next OP_WRITE
+						return;
+					}
+					writeQueue.poll();
+				}
+				count = fillWriteBatch();
+			}
+			key.interestOps(SelectionKey.OP_READ);
+			//Another thread may have queued something between the last peek and clearing OP_WRITE
+			if(!writeQueue.isEmpty() || !messageQueue.isEmpty() || hasPendingInventory()) {
+				key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+			}
+		}
+		catch(IOException e) {
+			stop();
+		}
+	}
+	/**
+	 * Copies the head of the write queue into writeBatch. Only the event loop thread removes buffers 
+	 * from the write queue, so they stay at the head until written.
+	 * 
+	 * @return The number of buffers in the batch
+	 */
+	private int fillWriteBatch() {
+		int count = 0;
+		for(ByteBuffer buffer: writeQueue) {
+			if(count == MAX_WRITE_BATCH) {
+				break;
+			}
+			writeBatch[count++] = buffer;
+		}
+		//Don't hold on to buffers that were already written
+		Arrays.fill(writeBatch, count, MAX_WRITE_BATCH, null);
+		return count;
+	}
+	/**
+	 * Moves queued messages into the write queue, but only while the channel keeps up. Messages left waiting in 
+	 * the bounded sending queue are subject to the outbound queue policy, instead of piling up in the write queue.
+	 */
+	@Override
+	protected void flushMessageQueue() {
+		queuePendingInventory();
+		//The write queue only holds a few batches, so counting it is cheap
+		int writable = 2*MAX_WRITE_BATCH-writeQueue.size();
+		for(int i=0;i<writable;i++) {
+			EncodedMessage m = messageQueue.poll();
+			if(m == null) {
+				break;
+			}
+			//Encoded bytes are shared with other peers, each socket gets its own view of them
+			writeQueue.add(ByteBuffer.wrap(getBytes(m)));
+		}
+	}
+	/**
+	 * Queues a received message to be handed to the callback on a worker thread.
+	 */
+	@Override
+	protected void dispatch(Message received) {
+		//Only the event loop adds messages, so the count cannot grow past the limit between the check and the add
+		if(inboundCount.get() >= MAX_PENDING_INBOUND) {
+			DecentLogger.write(DecentLogger.Level.WARN, "Dropping "+getInetAddress().getHostAddress()+" because its messages could not be handled fast enough");
+			stop();
+			return;
+		}
+		inboundCount.incrementAndGet();
+		inbound.add(received);
+		if(dispatching.compareAndSet(false, true)) {
+			selector.execute(this::drainInbound);
+		}
+	}
+	/**
+	 * Hands every queued message to the callback. Runs on a worker thread.
+	 */
+	private void drainInbound() {
+		Message m = inbound.poll();
+		while(m != null) {
+			inboundCount.decrementAndGet();
+			super.dispatch(m);
+			m = inbound.poll();
+		}
+		dispatching.set(false);
+		//A message queued after the last poll, but before the flag was cleared, still needs a worker
+		if(!inbound.isEmpty() && dispatching.compareAndSet(false, true)) {
+			selector.execute(this::drainInbound);
+		}
+	}
+	@Override
+	public void send(EncodedMessage m) {
+		super.send(m);
+		requestWrite();
+	}
+	@Override
+	public void announce(byte[] signature) {
+		super.announce(signature);
+		requestWrite();
+	}
+	@Override
+	protected void sendBytes(byte[] bytes) {
+		writeQueue.add(ByteBuffer.wrap(bytes));
+		requestWrite();
+	}
+	/**
+	 * Hands the interest change to the event loop, as changing the interest set from other threads 
+	 * contends with select() and may not be noticed until the next one.
+	 */
+	private void requestWrite() {
+		if(writeRequested.compareAndSet(false, true)) {
+			selector.requestWrite(this);
+		}
+	}
+	@Override
+	protected int getQueueDepth() {
+		//Counts the encoded messages waiting for the channel too
+		return super.getQueueDepth()+writeQueue.size();
+	}
+	/**
+	 * Returns whether this is a one-time (non peer) socket that has not read anything for the
+	 * normal read timeout and has nothing left to write.
+	 *
+	 * @param now The current time in milliseconds
+	 * @return true/false if this socket can be closed
+	 */
+	protected boolean isIdle(long now) {
+		return !isPeer && now-lastActivity > NORMAL_TIMEOUT && writeQueue.isEmpty() && messageQueue.isEmpty();
+	}
+	/**
+	 * Returns whether the underlying channel is still open.
+	 *
+	 * @return true/false if the channel is open
+	 */
+	protected boolean isOpen() {
+		return channel.isOpen();
+	}
+	/**
+	 * Closes the channel without sending an EOT. The event loop then notices the closed channel and calls stop().
+	 */
+	@Override
+	protected void abort() {
+		try {
+			channel.close();
+		}
+		catch(IOException e) {
+
+		}
+	}
+	@Override
+	protected void closeSocket() {
+		try {
+			if(channel.isConnected()) {
+				//Best effort, the remote end may not be reading anymore
+				channel.write(ByteBuffer.wrap((String.valueOf(EOT)+"\n").getBytes(CHARSET)));
+			}
+		}
+		catch(IOException e) {
+
+		}
+		try {
+			if(key != null) {
+				key.cancel();
+			}
+			channel.close();
+		}
+		catch(IOException e) {
+
+		}
+	}
+
+}
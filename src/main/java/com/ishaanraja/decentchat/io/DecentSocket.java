@@ -1,20 +1,34 @@
 package com.ishaanraja.decentchat.io;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
+import java.io.BufferedOutputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.InetAddress;
 import java.net.Socket;
 import java.net.SocketException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
 import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
 
-import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
 import com.ishaanraja.decentchat.config.DecentConfig;
 import com.ishaanraja.decentchat.config.DecentLogger;
+import com.ishaanraja.decentchat.message.BinaryCodec;
+import com.ishaanraja.decentchat.message.ChatMessage;
+import com.ishaanraja.decentchat.message.EncodedMessage;
+import com.ishaanraja.decentchat.message.HistoryMessage;
+import com.ishaanraja.decentchat.message.InventoryMessage;
+import com.ishaanraja.decentchat.message.JsonCodec;
 import com.ishaanraja.decentchat.message.Message;
 import com.ishaanraja.decentchat.message.PingMessage;
 import com.ishaanraja.decentchat.message.PongMessage;
@@ -26,24 +40,90 @@ import com.ishaanraja.decentchat.message.PongMessage;
  */
 public class DecentSocket implements Runnable {
 	
-	private static final int NORMAL_TIMEOUT = 200;
+	protected static final int NORMAL_TIMEOUT = 200;
 	/**
 	 * EOT (end of transmission) is an ASCII character with decimal representation of 4. This character
 	 * is sent by DecentSocket to indicate that the socket is being closed. 
 	 * When received, this indicates that the remote end of the socket is being closed.
 	 */
-	private static final char EOT = 4;
+	protected static final char EOT = 4;
+	/**
+	 * The charset JSON lines are encoded in.
+	 */
+	protected static final Charset CHARSET = JsonCodec.CHARSET;
+	private static final int READ_BUFFER_SIZE = 8192;
+	/**
+	 * Queued messages are written into this buffer and flushed together, instead of one system call per message.
+	 */
+	private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+	/**
+	 * How long the sending queue may stay full before the peer is disconnected, with the disconnect policy.
+	 */
+	private static final long STALLED_QUEUE_TIMEOUT = 30 * 1000;
+	/**
+	 * The most chat message IDs that may wait to be announced to the remote peer.
+	 */
+	private static final int MAX_PENDING_INVENTORY = InventoryMessage.MAX_IDS;
 	
 	private Socket socket;
-	private Queue<Message> messageQueue;
+	private InetAddress address;
+	/**
+	 * Messages waiting to be written to the remote peer. Bounded by the outbound queue capacity in the config, 
+	 * see enqueue() for what happens when it is full.
+	 */
+	protected Queue<EncodedMessage> messageQueue;
+	//When the sending queue was first found full, 0 if it was not full since the last message was queued
+	private volatile long queueFullSince;
+	//Set once the peer is being disconnected because its sending queue stayed full
+	private volatile boolean stalled;
 	private DecentCallback callback;
-	private boolean online;
-	private boolean testingPong;
-	private boolean pongReceived;
-	private boolean isPeer;
+	//Read by the writer thread and set to false by whichever thread stops the socket
+	protected volatile boolean online;
+	/**
+	 * The ping waiting for its pong, or null if there is none.
+	 */
+	private AtomicReference<PendingPing> pendingPing;
+	private RoundTripTime roundTripTime;
+	private PeerStats stats;
+	protected boolean isPeer;
+	/**
+	 * Set once the remote peer has shown that it can decode binary frames. Until then, messages are sent as JSON.
+	 */
+	private volatile boolean binaryFraming;
+	/**
+	 * The DecentChat version of the remote peer, from the most recent message it created itself (not a relayed chat message).
+	 */
+	private volatile String remoteVersion;
+	/**
+	 * IDs of chat messages waiting to be announced to the remote peer in the next InventoryMessage.
+	 */
+	private Queue<String> pendingInventory;
+	private AtomicInteger pendingInventoryCount;
+	protected FrameReader frameReader;
+	/**
+	 * Signatures of the chat messages this peer is known to have, because it sent them to us or we sent them to it.
+	 */
+	private RollingBloomFilter knownSignatures;
+	
+	private InputStream socketInput;
+	private OutputStream socketOutput;
+	/**
+	 * The thread that writes queued messages while reads block, or null if queued messages are 
+	 * written between reads that time out.
+	 */
+	private volatile Thread writer;
+	/**
+	 * Held while writing to the socket, so that frames written by different threads never interleave. 
+	 * A lock instead of synchronized, because a virtual thread blocked writing inside a monitor pins its 
+	 * carrier thread on Java 21 to 23.
+	 */
+	private final ReentrantLock writeLock = new ReentrantLock();
 	
-	private BufferedReader socketReader;
-	private BufferedWriter socketWriter;
+	private static class PendingPing extends CompletableFuture<Long> {
+		
+		private volatile long sent;
+		
+	}
 	
 	/**
 	 * Constructs a new DecentSocket object.
@@ -52,25 +132,49 @@ public class DecentSocket implements Runnable {
 	 * @param socket The socket object that will be communicated with
 	 */
 	protected DecentSocket(DecentCallback callback, Socket socket) {
-		this.callback = callback;
+		this(callback, socket.getInetAddress());
 		this.socket = socket;
-		messageQueue = new LinkedBlockingQueue<Message>();
-		online = true;
-		isPeer = callback.canAddSocketPeer(socket.getInetAddress());
-		if(isPeer) {
-			callback.addSocketPeer(this);
-		}
 		try {
-			socketReader = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-			socketWriter = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream()));
-			new Thread(this).start();
+			socketInput = socket.getInputStream();
+			socketOutput = new BufferedOutputStream(socket.getOutputStream(), WRITE_BUFFER_SIZE);
+			register();
+			DecentThreads.start(this, "DecentSocket "+getInetAddress().getHostAddress());
 		}
 		catch(IOException e) {
-			DecentLogger.write("Could not open socket to "+getInetAddress()+"because of "+e.getMessage());
+			DecentLogger.write(DecentLogger.Level.WARN, "Could not open socket to "+getInetAddress()+"because of "+e.getMessage());
 			stop();
 			
 		}
 	}
+	/**
+	 * Constructs the transport independent state of a DecentSocket. Used by subclasses that 
+	 * read and write to the remote peer by some other means than a dedicated thread. The socket 
+	 * is not added as a peer until register() is called.
+	 * 
+	 * @param callback The DecentCallback object that will be called on certain events
+	 * @param address The InetAddress of the remote peer
+	 */
+	protected DecentSocket(DecentCallback callback, InetAddress address) {
+		this.callback = callback;
+		this.address = address;
+		messageQueue = new LinkedBlockingQueue<EncodedMessage>(DecentConfig.getOutboundQueueCapacity());
+		frameReader = new FrameReader(this);
+		knownSignatures = new RollingBloomFilter();
+		pendingInventory = new ConcurrentLinkedQueue<String>();
+		pendingInventoryCount = new AtomicInteger();
+		pendingPing = new AtomicReference<PendingPing>();
+		roundTripTime = new RoundTripTime();
+		stats = new PeerStats(roundTripTime, this::getQueueDepth);
+		online = true;
+	}
+	/**
+	 * Offers this socket to the callback as a peer. Must be called once construction is complete, including 
+	 * that of subclasses, since other threads send to a peer as soon as it is added.
+	 */
+	protected void register() {
+		//The pre-check is cheap, but only adding the socket decides, since other sockets may be added meanwhile
+		isPeer = callback.canAddSocketPeer(address) && callback.addSocketPeer(this);
+	}
 
 	@Override
 	public void run() {
@@ -96,7 +200,7 @@ public class DecentSocket implements Runnable {
 		try {
 			socket.close();
 		} catch (IOException e1) {
-			DecentLogger.write("Failed to close socket for "+socket.getInetAddress().getHostAddress());
+			DecentLogger.write(DecentLogger.Level.WARN, "Failed to close socket for "+socket.getInetAddress().getHostAddress());
 		}
 	}
 	/**
@@ -104,124 +208,578 @@ public class DecentSocket implements Runnable {
 	 */
 	private void readSocket() {
 		try {
-			String message = socketReader.readLine();
-			while(!socket.isInputShutdown() && message != null) {
-				if(message.charAt(0) == EOT) {
-					stop();
-				}
-				JsonObject jsonObj = JsonParser.parseString(message).getAsJsonObject();
-				//If getting by "type" throws an exception, that means we have an invalid message and we throw the message away
-				String type = jsonObj.get("type").getAsString();
-				if(type.equals("ping")) {
-					sendString(new PongMessage(DecentConfig.getPeeringDifficulty()).toJson());
-				}
-				else if(type.equals("pong")) {
-					//Don't execute message callback for pong, unless we asked for it
-					if(testingPong && !pongReceived) {
-						pongReceived = true;
-						callback.onSocketMessageReceived(message, this);
-					}
+			byte[] buffer = new byte[READ_BUFFER_SIZE];
+			int read = socketInput.read(buffer);
+			while(!socket.isInputShutdown() && read != -1) {
+				try {
+					frameReader.read(buffer, 0, read);
 				}
-				else {
-					Message m = callback.onSocketMessageReceived(message, this);	
-					if(m != null) {
-						send(m);
-					}
+				catch(IOException e) {
+					stats.countInvalid();
+					DecentLogger.write(DecentLogger.Level.WARN, "Dropping "+getInetAddress().getHostAddress()+" because of "+e.getMessage());
+					stop();
+					return;
 				}
-				message = socketReader.readLine();
+				read = socketInput.read(buffer);
+			}
+			if(read == -1 && isPeer) {
+				//Remote end closed without sending an EOT
+				stop();
 			}
 		}
 		catch(Exception e) {
 			//Do nothing - sometimes client will receive invalid messages
 		}
 		catch(OutOfMemoryError e) {
-			DecentLogger.write("A DecentSocket thread has run out of memory. This can be caused by insufficient memory allocation or a malicious peer sending long messages.");
+			DecentLogger.write(DecentLogger.Level.ERROR, "A DecentSocket thread has run out of memory. This can be caused by insufficient memory allocation or a malicious peer sending long messages.");
+			stop();
+		}
+	}
+	/**
+	 * Handles a single line received from the remote peer. The line is decoded exactly once 
+	 * and handled by handleMessage(Message).
+	 * 
+	 * @param message The line that was received, without its line terminator
+	 * @param length The size of the line on the wire, in bytes
+	 */
+	protected void handleMessage(String message, int length) {
+		if(message.charAt(0) == EOT) {
 			stop();
+			return;
+		}
+		//Throws an exception if the line is not valid JSON, in that case we throw the message away
+		Message received = JsonCodec.decode(message);
+		if(received == null) {
+			stats.countInvalid();
+			return;
+		}
+		stats.countReceived(received.getType(), length);
+		if(isCreatedByPeer(received) && BinaryCodec.isSupportedBy(received.getVersion())) {
+			enableBinaryFraming();
+		}
+		handleMessage(received);
+	}
+	/**
+	 * Handles a single binary frame received from the remote peer.
+	 * 
+	 * @param payload The payload of the frame, without its marker and length prefix
+	 * @throws IOException If the payload is not a valid message
+	 */
+	protected void handleFrame(byte[] payload) throws IOException {
+		Message received = BinaryCodec.decode(payload);
+		stats.countReceived(received.getType(), BinaryCodec.HEADER_SIZE+payload.length);
+		//Only peers that can decode binary frames send them
+		enableBinaryFraming();
+		handleMessage(received);
+	}
+	/**
+	 * Handles a single decoded message. Pings are answered directly, pongs are only passed on 
+	 * if one was asked for, and every other message is handed to the callback.
+	 * 
+	 * @param received The message that was received
+	 */
+	private void handleMessage(Message received) {
+		if(received.getVersion() != null && isCreatedByPeer(received)) {
+			remoteVersion = received.getVersion();
+		}
+		if(received instanceof ChatMessage) {
+			//Chat messages that could not be checked by the duplicate filter are marked as known here
+			byte[] signature = new EncodedMessage(received).getChatSignature();
+			if(signature != null) {
+				knownSignatures.add(signature);
+			}
+		}
+		else if(received instanceof InventoryMessage) {
+			for(String id: ((InventoryMessage) received).getIds()) {
+				byte[] rawId = InventoryMessage.decodeId(id);
+				if(rawId != null) {
+					knownSignatures.add(rawId);
+				}
+			}
+		}
+		String type = received.getType();
+		if(type.equals("ping")) {
+			sendMessage(new PongMessage(DecentConfig.getPeeringDifficulty()));
+		}
+		else if(type.equals("pong")) {
+			//Don't execute message callback for pong, unless we asked for it
+			PendingPing ping = pendingPing.getAndSet(null);
+			if(ping != null) {
+				long rtt = System.nanoTime()-ping.sent;
+				roundTripTime.record(rtt);
+				callback.onSocketMessageReceived(received, this);
+				ping.complete(rtt);
+			}
+		}
+		else {
+			dispatch(received);
+		}
+	}
+	/**
+	 * Hands a received message other than a ping or pong to the callback, and sends its reply if there is one. 
+	 * Runs on the thread reading from this socket.
+	 * 
+	 * @param received The message that was received
+	 */
+	protected void dispatch(Message received) {
+		Message m = callback.onSocketMessageReceived(received, this);	
+		if(m != null) {
+			send(m);
+		}
+	}
+	/**
+	 * Returns whether a received frame is a chat message that has already been seen.
+	 * 
+	 * @see com.ishaanraja.decentchat.io.DuplicateFilter
+	 * 
+	 * @param signature The raw signature found in the frame, or null if the frame is not a chat message
+	 * @param length The length of the frame in bytes
+	 * @return true if the frame should be dropped without being decoded
+	 */
+	boolean isDuplicate(byte[] signature, int length) {
+		if(signature != null) {
+			knownSignatures.add(signature);
+		}
+		if(DuplicateFilter.isDuplicate(callback, signature, length)) {
+			stats.countDuplicate(length);
+			callback.onDuplicateReceived(this);
+			return true;
+		}
+		return false;
+	}
+	/**
+	 * Returns whether this peer already has a chat message, because it sent it to us or we sent it to it. 
+	 * May rarely return true for a message the peer does not have.
+	 * 
+	 * @param signature The raw signature of the chat message
+	 * @return true if the peer probably has the message
+	 */
+	public boolean knowsSignature(byte[] signature) {
+		return knownSignatures.mightContain(signature);
+	}
+	/**
+	 * Returns whether a received message was created by the remote peer itself, so that its version is the 
+	 * peer's own. Chat messages are relayed unchanged and carry the version of the client that wrote them.
+	 * 
+	 * @param m The received message
+	 * @return true if the message's version is the remote peer's version
+	 */
+	private static boolean isCreatedByPeer(Message m) {
+		return !(m instanceof ChatMessage);
+	}
+	private void enableBinaryFraming() {
+		if(!binaryFraming && DecentConfig.getBinaryCodec()) {
+			binaryFraming = true;
 		}
 	}
+	/**
+	 * Returns whether new chat messages should be announced to this peer by ID instead of being pushed in full.
+	 * 
+	 * @see com.ishaanraja.decentchat.message.InventoryMessage
+	 * 
+	 * @return true if inventory gossip is enabled and the remote peer supports it
+	 */
+	public boolean isInventoryGossip() {
+		return DecentConfig.getInventoryGossip() && supportsVersion(InventoryMessage.MINIMUM_VERSION);
+	}
+	/**
+	 * Returns whether the remote peer has shown that it runs at least a given DecentChat version.
+	 * 
+	 * @param minimumVersion The version to compare against
+	 * @return true if a message of at least that version, created by the remote peer itself, has been received
+	 */
+	public boolean supportsVersion(String minimumVersion) {
+		return Message.compareVersions(remoteVersion, minimumVersion) >= 0;
+	}
+	/**
+	 * Queues the ID of a chat message to be announced to the remote peer. IDs queued until the next 
+	 * write are sent together in one InventoryMessage.
+	 * 
+	 * @param signature The raw signature of the chat message
+	 */
+	public void announce(byte[] signature) {
+		if(pendingInventoryCount.incrementAndGet() > MAX_PENDING_INVENTORY) {
+			//The announcements are not being sent, so the peer is not keeping up
+			pendingInventoryCount.decrementAndGet();
+			stats.countDropped();
+			return;
+		}
+		knownSignatures.add(signature);
+		pendingInventory.add(InventoryMessage.getId(signature));
+		wakeUpWriter();
+	}
+	/**
+	 * Moves the pending announcements into the sending queue, as InventoryMessages of at most 
+	 * InventoryMessage.MAX_IDS IDs each.
+	 */
+	protected void queuePendingInventory() {
+		ArrayList<String> ids = new ArrayList<String>();
+		String id = pendingInventory.poll();
+		while(id != null) {
+			pendingInventoryCount.decrementAndGet();
+			ids.add(id);
+			if(ids.size() == InventoryMessage.MAX_IDS) {
+				enqueue(new EncodedMessage(new InventoryMessage(ids)));
+				ids.clear();
+			}
+			id = pendingInventory.poll();
+		}
+		if(!ids.isEmpty()) {
+			enqueue(new EncodedMessage(new InventoryMessage(ids)));
+		}
+	}
+	protected boolean hasPendingInventory() {
+		return !pendingInventory.isEmpty();
+	}
+	/**
+	 * Returns whether messages to this peer are sent as binary frames.
+	 * 
+	 * @return true if binary frames are sent, false if JSON lines are sent
+	 */
+	public boolean isBinaryFraming() {
+		return binaryFraming;
+	}
 	/**
 	 * Creates a loop of reading and writing to the socket. If this DecentSocket is a peer 
 	 * (and not just a one-time reply), this method is used.
+	 * 
+	 * On virtual threads, reads block until the connection ends and a second virtual thread writes 
+	 * queued messages as soon as they are queued, so an idle peer costs no CPU at all. Otherwise reads 
+	 * time out every NORMAL_TIMEOUT milliseconds to write the queued messages in between, so that 
+	 * each peer only takes one platform thread, like before virtual threads were used.
 	 */
-	private void sustainSocket() {
-		while(online) {
+	private void sustainSocket() throws SocketException {
+		if(DecentThreads.isVirtual()) {
+			socket.setSoTimeout(0);
+			writer = DecentThreads.start(this::writeLoop, "DecentSocket writer "+getInetAddress().getHostAddress());
 			readSocket();
+			stop();
+		}
+		else {
+			while(online && !socket.isClosed()) {
+				readSocket();
+				flushMessageQueue();
+			}
+			if(online) {
+				//Closed by abort()
+				stop();
+			}
+		}
+	}
+	/**
+	 * Writes queued messages as they are queued until the socket is stopped.
+	 */
+	private void writeLoop() {
+		while(online) {
 			flushMessageQueue();
+			if(messageQueue.isEmpty() && !hasPendingInventory()) {
+				//A wakeUpWriter() since the check makes this return right away
+				LockSupport.park(this);
+			}
+		}
+	}
+	/**
+	 * Wakes the writer thread up after a message was queued, if there is one.
+	 */
+	private void wakeUpWriter() {
+		Thread w = writer;
+		if(w != null) {
+			LockSupport.unpark(w);
 		}
 	}
-	private void flushMessageQueue() {
-		while(!socket.isOutputShutdown() && !messageQueue.isEmpty()) {
-			sendString(messageQueue.poll().toJson());
+	/**
+	 * Writes every queued message and then flushes them to the Socket all at once.
+	 */
+	protected void flushMessageQueue() {
+		writeLock.lock();
+		try {
+			queuePendingInventory();
+			if(socket.isClosed() || socket.isOutputShutdown() || messageQueue.isEmpty()) {
+				return;
+			}
+			EncodedMessage m = messageQueue.poll();
+			while(m != null) {
+				socketOutput.write(getBytes(m));
+				m = messageQueue.poll();
+			}
+			socketOutput.flush();
+		}
+		catch (IOException e) {
+			DecentLogger.write(DecentLogger.Level.WARN, "Could not send message to "+getInetAddress()+" because of "+e.getMessage());
+		}
+		finally {
+			writeLock.unlock();
 		}
 	}
 	/**
 	 * Adds a message to the sending queue. 
 	 * 
 	 * @param m The message that will be sent
-	 * @param destination The destination it is bound for
 	 */
 	public void send(Message m) {
-		messageQueue.add(m);
+		send(new EncodedMessage(m));
+	}
+	/**
+	 * Adds an already encoded message to the sending queue. Used to send the same message to many peers
+	 * while only encoding it once.
+	 * 
+	 * @param m The encoded message that will be sent
+	 */
+	public void send(EncodedMessage m) {
+		if(!enqueue(m)) {
+			return;
+		}
+		byte[] signature = m.getChatSignature();
+		if(signature != null) {
+			knownSignatures.add(signature);
+		}
+		wakeUpWriter();
+	}
+	/**
+	 * Adds a message to the sending queue. If the queue is full, the outbound queue policy in the config decides 
+	 * what happens:
+	 * <ul>
+	 * <li>dropOldest - The oldest queued message is dropped to make room.
+	 * <li>dropByPriority - The oldest queued message of the lowest priority is dropped to make room, unless 
+	 * every queued message has a higher priority than the new one, in which case the new message is dropped.
+	 * <li>disconnect - The new message is dropped, and once the queue has stayed full for STALLED_QUEUE_TIMEOUT 
+	 * the peer is disconnected with abort().
+	 * </ul>
+	 * 
+	 * @param m The message to queue
+	 * @return true if the message was queued, false if it was dropped
+	 */
+	private boolean enqueue(EncodedMessage m) {
+		while(!messageQueue.offer(m)) {
+			if(!makeRoom(m)) {
+				stats.countDropped();
+				return false;
+			}
+		}
+		queueFullSince = 0;
+		stats.recordQueueDepth(messageQueue.size());
+		return true;
 	}
 	/**
-	 * Sends a given String to the Socket
+	 * Makes room in the full sending queue according to the outbound queue policy.
+	 * 
+	 * @param m The message that is being queued
+	 * @return true if queueing should be tried again, false if the new message should be dropped
+	 */
+	private boolean makeRoom(EncodedMessage m) {
+		switch(DecentConfig.getOutboundQueuePolicy()) {
+			case "disconnect":
+				long now = System.currentTimeMillis();
+				if(queueFullSince == 0) {
+					queueFullSince = now;
+				}
+				else if(now-queueFullSince > STALLED_QUEUE_TIMEOUT && online && !stalled) {
+					stalled = true;
+					DecentLogger.write(DecentLogger.Level.WARN, "Dropping "+getInetAddress().getHostAddress()+" because its sending queue stayed full");
+					abort();
+				}
+				return false;
+			case "dropByPriority":
+				int priority = getPriority(m.getMessage());
+				EncodedMessage victim = null;
+				int victimPriority = priority;
+				for(EncodedMessage queued: messageQueue) {
+					int queuedPriority = getPriority(queued.getMessage());
+					if(queuedPriority < victimPriority || (victim == null && queuedPriority == priority)) {
+						victim = queued;
+						victimPriority = queuedPriority;
+					}
+				}
+				if(victim == null) {
+					return false;
+				}
+				if(messageQueue.remove(victim)) {
+					stats.countDropped();
+				}
+				return true;
+			default:
+				if(messageQueue.poll() != null) {
+					stats.countDropped();
+				}
+				return true;
+		}
+	}
+	/**
+	 * Returns how important it is that a message reaches the remote peer, for the dropByPriority policy. 
+	 * Control messages keep the connection and the broadcast working, chat messages may also reach 
+	 * the peer through other peers, and history messages are large and only help the peer catch up.
+	 * 
+	 * @param m The message
+	 * @return 2 for control messages, 1 for chat messages and 0 for history messages
+	 */
+	private static int getPriority(Message m) {
+		if(m instanceof HistoryMessage) {
+			return 0;
+		}
+		else if(m instanceof ChatMessage) {
+			return 1;
+		}
+		return 2;
+	}
+	/**
+	 * Sends a message right away, as a binary frame if the remote peer supports them or else as a JSON line.
+	 * 
+	 * @param m The message to send
+	 */
+	protected void sendMessage(Message m) {
+		sendBytes(getBytes(new EncodedMessage(m)));
+	}
+	/**
+	 * Returns the bytes to send for a message, depending on the framing the remote peer supports. 
+	 * Only called right before the bytes are written, so the message is counted as sent here.
+	 * 
+	 * @param m The encoded message
+	 * @return The shared bytes of the binary frame or JSON line, which must not be modified
+	 */
+	protected byte[] getBytes(EncodedMessage m) {
+		byte[] frame = binaryFraming ? m.getBinaryFrame() : null;
+		byte[] bytes = frame != null ? frame : m.getJsonLine();
+		stats.countSent(m.getMessage().getType(), bytes.length);
+		return bytes;
+	}
+	/**
+	 * Returns the number of messages waiting to be written to the remote peer.
+	 * 
+	 * @return The length of the sending queue
+	 */
+	protected int getQueueDepth() {
+		return messageQueue.size();
+	}
+	/**
+	 * Returns the traffic and latency statistics of this connection.
+	 * 
+	 * @return The statistics of this peer
+	 */
+	public PeerStats getStats() {
+		return stats;
+	}
+	/**
+	 * Sends a given String to the Socket as a line
 	 * @param text
 	 */
-	private void sendString(String text) {
+	protected void sendString(String text) {
+		sendBytes((text+"\n").getBytes(CHARSET));
+	}
+	/**
+	 * Writes already framed bytes to the Socket. Holds the write lock so that frames written by different 
+	 * threads never interleave.
+	 * 
+	 * @param bytes The bytes to send
+	 */
+	protected void sendBytes(byte[] bytes) {
+		writeLock.lock();
 		try {
-			socketWriter.write(text);
-			socketWriter.newLine();
-			socketWriter.flush();
+			socketOutput.write(bytes);
+			socketOutput.flush();
 		} 
 		catch (IOException e) {
-			DecentLogger.write("Could not send message to "+getInetAddress()+" because of "+e.getMessage());
+			DecentLogger.write(DecentLogger.Level.WARN, "Could not send message to "+getInetAddress()+" because of "+e.getMessage());
+		}
+		finally {
+			writeLock.unlock();
 		}
 	}
+	/**
+	 * Sends a ping message. The returned future is completed by the thread reading from this socket 
+	 * once the pong arrives, and every round trip is recorded in getRoundTripTime().
+	 * 
+	 * Pongs cannot be told apart, so only one ping is outstanding at a time: while one is, the future 
+	 * of that ping is returned instead of sending another.
+	 * 
+	 * @param m The ping message to send
+	 * @return A future completed with the round trip time in nanoseconds, or completed exceptionally 
+	 * if the socket is stopped first
+	 */
+	public CompletableFuture<Long> ping(PingMessage m) {
+		PendingPing ping = new PendingPing();
+		if(!online) {
+			ping.completeExceptionally(new IOException("Socket is closed"));
+			return ping;
+		}
+		//Set before the ping is published, as a late pong to an abandoned ping may complete it right away
+		ping.sent = System.nanoTime();
+		while(!pendingPing.compareAndSet(null, ping)) {
+			PendingPing outstanding = pendingPing.get();
+			if(outstanding != null) {
+				return outstanding;
+			}
+		}
+		sendMessage(m);
+		return ping;
+	}
 	/**
 	 * Sends a ping message and waits to see if a pong message is received back.
 	 * 
-	 * Note: This method is intended to be called from a thread not within this DecentSocket,
-	 * particularly because this method blocks and that might prevent the thread from reading/writing
-	 * from the remote socket.
+	 * Note: This method blocks, so it should not be called from the thread reading from this socket.
 	 * 
 	 * @param m The ping message to send
 	 * @param timeout The amount of time (in milliseconds) to wait for a pong response
 	 * @return true/false whether a pong message was received back
 	 */
 	public boolean testPing(PingMessage m, int timeout) {
+		CompletableFuture<Long> ping = ping(m);
 		try {
-			if(online) {
-				testingPong = true;
-				pongReceived = false;
-				sendString(m.toJson());
-				long timeWaited = 0;
-				while(pongReceived == false && timeWaited < timeout) {
-					Thread.sleep(10);
-					timeWaited+=10;
-				}
-				testingPong = false;
-				return pongReceived;
-			}
+			ping.get(timeout, TimeUnit.MILLISECONDS);
+			return true;
+		}
+		catch(TimeoutException e) {
+			//Give up on this ping, so that the next one is actually sent
+			pendingPing.compareAndSet((PendingPing) ping, null);
 		}
-		catch (Exception e) {
-			DecentLogger.write("Could not test ping because of "+e.getMessage());
+		catch(InterruptedException | ExecutionException e) {
+			
 		}
 		return false;
 	}
+	/**
+	 * Returns the round trip times measured by pinging this peer.
+	 * 
+	 * @return The round trip times of this peer
+	 */
+	public RoundTripTime getRoundTripTime() {
+		return roundTripTime;
+	}
 	/**
 	 * Returns the InetAddress of the remote end of the socket.
 	 * 
 	 * @return InetAddress of other end of the socket.
 	 */
 	public InetAddress getInetAddress() {
-		return socket.getInetAddress();
+		return address;
+	}
+	/**
+	 * Returns whether the socket is still open.
+	 * 
+	 * @return true until stop() is called
+	 */
+	public boolean isOnline() {
+		return online;
+	}
+	/**
+	 * Disconnects a peer whose writes have stalled, without blocking the calling thread, which is usually 
+	 * broadcasting a message. The socket is closed without sending an EOT and without taking the write lock, 
+	 * which a thread blocked writing to the peer still holds. The blocked write then fails, and the thread 
+	 * reading from this socket calls stop().
+	 */
+	protected void abort() {
+		try {
+			socket.close();
+		}
+		catch(IOException e) {
+			
+		}
 	}
 	/**
 	 * Closes the socket and shuts down input/output streams.
 	 */
-	private void closeSocket() {
+	protected void closeSocket() {
 		try {
-			if(socket.isConnected()) {
+			if(socket.isConnected() && !socket.isClosed()) {
 				sendString(String.valueOf(EOT));
 			}
 			socket.shutdownInput();
@@ -238,8 +796,13 @@ public class DecentSocket implements Runnable {
 	public void stop() {
 		closeSocket();
 		if(isPeer) {
-			callback.removeSocketPeer(getInetAddress());
+			callback.removeSocketPeer(this);
 		}
 		online = false;
+		wakeUpWriter();
+		PendingPing ping = pendingPing.getAndSet(null);
+		if(ping != null) {
+			ping.completeExceptionally(new IOException("Socket is closed"));
+		}
 	}
 }
@@ -0,0 +1,79 @@
+package com.ishaanraja.decentchat.io;
+
+import java.lang.reflect.Method;
+
+import com.ishaanraja.decentchat.config.DecentConfig;
+
+/**
+ * Starts the client's long running blocking loops (peer sockets, the listener, the peer checker and the
+ * client's background tasks).
+ *
+ * On Java 21 or later, and unless disabled in the config, the loops run on virtual threads, which cost a
+ * few hundred bytes while blocked instead of a full platform thread stack. Virtual threads are looked up
+ * at runtime, so that the client still builds and runs on Java 8, where platform threads are used. One
+ * virtual thread is started when the class loads, since on Java 19 and 20 virtual threads are a preview
+ * feature that fails to start unless preview features are enabled.
+ *
+ * Without virtual threads every call starts a new platform thread, so callers only start long running
+ * loops here and run short tasks on a bounded pool instead.
+ */
+public final class DecentThreads {
+
+	//Thread.Builder methods, or null if virtual threads are unavailable
+	private static final Method OF_VIRTUAL;
+	private static final Method NAME;
+	private static final Method START;
+
+	private DecentThreads() {}
+
+	static {
+		Method ofVirtual = null;
+		Method name = null;
+		Method start = null;
+		try {
+			ofVirtual = Thread.class.getMethod("ofVirtual");
+			Class<?> builder = Class.forName("java.lang.Thread$Builder");
+			name = builder.getMethod("name", String.class);
+			start = builder.getMethod("start", Runnable.class);
+			//Throws if virtual threads exist but cannot be used
+			Runnable probe = () -> {};
+			start.invoke(ofVirtual.invoke(null), probe);
+		}
+		catch(ReflectiveOperationException e) {
+			ofVirtual = null;
+		}
+		OF_VIRTUAL = ofVirtual;
+		NAME = name;
+		START = start;
+	}
+
+	/**
+	 * Returns whether loops are started on virtual threads.
+	 *
+	 * @return true if virtual threads are available and enabled in the config
+	 */
+	public static boolean isVirtual() {
+		return OF_VIRTUAL != null && DecentConfig.getVirtualThreads();
+	}
+	/**
+	 * Starts a new thread running the given loop.
+	 *
+	 * @param task The loop to run
+	 * @param name The name of the thread
+	 * @return The started thread
+	 */
+	public static Thread start(Runnable task, String name) {
+		if(isVirtual()) {
+			try {
+				return (Thread) START.invoke(NAME.invoke(OF_VIRTUAL.invoke(null), name), task);
+			}
+			catch(ReflectiveOperationException e) {
+				//Fall back to a platform thread below
+			}
+		}
+		Thread t = new Thread(task, name);
+		t.start();
+		return t;
+	}
+
+}
@@ -0,0 +1,101 @@
+package com.ishaanraja.decentchat.io;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Drops chat messages that have already been seen before they are decoded.
+ *
+ * In a flood network nearly every chat message arrives once from every peer. The signature of a chat message
+ * is found directly in the received bytes and checked against the signatures the client has already seen, so that
+ * duplicates never reach the JSON parser, the binary decoder or the DecentChatClient.
+ *
+ * It also counts the broadcast sends that were suppressed because the peer was already known to have the message.
+ *
+ * @see com.ishaanraja.decentchat.message.JsonCodec#peekChatSignature(byte[], int)
+ * @see com.ishaanraja.decentchat.message.BinaryCodec#peekChatSignature(byte[])
+ */
+public final class DuplicateFilter {
+
+	private static LongAdder checked = new LongAdder();
+	private static LongAdder dropped = new LongAdder();
+	private static LongAdder droppedBytes = new LongAdder();
+	private static LongAdder broadcastSends = new LongAdder();
+	private static LongAdder suppressedSends = new LongAdder();
+
+	private DuplicateFilter() {}
+
+	/**
+	 * Returns whether a received chat message has already been seen, and counts it if so.
+	 *
+	 * @param callback The callback that knows which signatures have been seen
+	 * @param signature The raw signature found in the frame, or null if the frame is not a chat message
+	 * @param length The length of the frame in bytes
+	 * @return true if the frame should be dropped without being decoded
+	 */
+	static boolean isDuplicate(DecentCallback callback, byte[] signature, int length) {
+		if(signature == null) {
+			return false;
+		}
+		checked.increment();
+		if(callback.isSeenSignature(signature)) {
+			dropped.increment();
+			droppedBytes.add(length);
+			return true;
+		}
+		return false;
+	}
+	/**
+	 * Counts one broadcast of a chat message to one peer.
+	 *
+	 * @param suppressed true if the send was skipped because the peer already had the message
+	 */
+	public static void countBroadcastSend(boolean suppressed) {
+		broadcastSends.increment();
+		if(suppressed) {
+			suppressedSends.increment();
+		}
+	}
+	/**
+	 * Returns the number of chat messages whose signature was checked before decoding.
+	 *
+	 * @return the number of checked chat messages
+	 */
+	public static long getChecked() {
+		return checked.sum();
+	}
+	/**
+	 * Returns the number of duplicate chat messages that were dropped without being decoded. Each of these
+	 * saved a full decode, the cheap validity checks and a trip through the DecentChatClient.
+	 *
+	 * @return the number of dropped duplicates
+	 */
+	public static long getDropped() {
+		return dropped.sum();
+	}
+	/**
+	 * Returns the total size of the duplicate chat messages that were dropped without being decoded.
+	 *
+	 * @return the number of bytes that were not decoded
+	 */
+	public static long getDroppedBytes() {
+		return droppedBytes.sum();
+	}
+
+	/**
+	 * Returns the number of times a chat message was to be broadcast to a peer, including suppressed sends.
+	 *
+	 * @return the number of broadcast sends
+	 */
+	public static long getBroadcastSends() {
+		return broadcastSends.sum();
+	}
+	/**
+	 * Returns the number of broadcast sends that were skipped because the peer already had the message.
+	 *
+	 * @return the number of suppressed sends
+	 */
+	public static long getSuppressedSends() {
+		return suppressedSends.sum();
+	}
+
+}
@@ -0,0 +1,124 @@
+package com.ishaanraja.decentchat.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import com.ishaanraja.decentchat.message.BinaryCodec;
+import com.ishaanraja.decentchat.message.JsonCodec;
+
+/**
+ * Splits the bytes received by a DecentSocket into frames, which are either newline delimited JSON
+ * lines or length prefixed binary frames. A frame may arrive in any number of pieces, the partial frame
+ * is kept until the rest of it arrives.
+ *
+ * Chat messages that have already been seen are dropped here, before they are decoded.
+ *
+ * @see com.ishaanraja.decentchat.message.BinaryCodec
+ */
+class FrameReader {
+
+	/**
+	 * The longest line (in bytes) a peer may send before the connection is dropped. The
+	 * largest legitimate message is a full HistoryMessage, which is well below this.
+	 */
+	private static final int MAX_LINE_LENGTH = 1024 * 1024;
+
+	private DecentSocket socket;
+	private ByteArrayOutputStream lineBuffer;
+	private boolean inLine;
+	private byte[] header;
+	//-1 while not reading a binary frame header
+	private int headerPosition;
+	private byte[] payload;
+	private int payloadPosition;
+
+	FrameReader(DecentSocket socket) {
+		this.socket = socket;
+		this.lineBuffer = new ByteArrayOutputStream();
+		this.header = new byte[BinaryCodec.HEADER_SIZE-1];
+		this.headerPosition = -1;
+	}
+	/**
+	 * Consumes received bytes, handing every completed frame to the DecentSocket.
+	 *
+	 * @param bytes The buffer holding the received bytes
+	 * @param offset The offset of the first received byte
+	 * @param length The number of received bytes
+	 * @throws IOException If the peer sent a frame that is too long
+	 */
+	void read(byte[] bytes, int offset, int length) throws IOException {
+		int end = offset+length;
+		int i = offset;
+		while(i < end) {
+			if(payload != null) {
+				int count = Math.min(end-i, payload.length-payloadPosition);
+				System.arraycopy(bytes, i, payload, payloadPosition, count);
+				payloadPosition+=count;
+				i+=count;
+				if(payloadPosition == payload.length) {
+					byte[] frame = payload;
+					payload = null;
+					onBinaryFrame(frame);
+				}
+				continue;
+			}
+			byte b = bytes[i++];
+			if(headerPosition >= 0) {
+				header[headerPosition++] = b;
+				if(headerPosition == header.length) {
+					headerPosition = -1;
+					int payloadLength = ((header[0] & 0xFF) << 24) | ((header[1] & 0xFF) << 16) | ((header[2] & 0xFF) << 8) | (header[3] & 0xFF);
+					if(payloadLength <= 0 || payloadLength > BinaryCodec.MAX_PAYLOAD_LENGTH) {
+						throw new IOException("Invalid binary frame length "+payloadLength);
+					}
+					payload = new byte[payloadLength];
+					payloadPosition = 0;
+				}
+			}
+			else if(!inLine && b == BinaryCodec.FRAME_MARKER) {
+				headerPosition = 0;
+			}
+			else if(b == '\n') {
+				inLine = false;
+				onLine(lineBuffer.toByteArray());
+				lineBuffer.reset();
+			}
+			else {
+				inLine = true;
+				lineBuffer.write(b);
+				if(lineBuffer.size() > MAX_LINE_LENGTH) {
+					throw new IOException("Line longer than "+MAX_LINE_LENGTH+" bytes");
+				}
+			}
+		}
+	}
+	private void onLine(byte[] bytes) {
+		int length = bytes.length;
+		if(length > 0 && bytes[length-1] == '\r') {
+			length--;
+		}
+		if(length == 0 || socket.isDuplicate(JsonCodec.peekChatSignature(bytes, length), length)) {
+			return;
+		}
+		try {
+			socket.handleMessage(new String(bytes, 0, length, DecentSocket.CHARSET), bytes.length+1);
+		}
+		catch(Exception e) {
+			//Sometimes client will receive invalid messages
+			socket.getStats().countInvalid();
+		}
+	}
+	private void onBinaryFrame(byte[] frame) {
+		if(socket.isDuplicate(BinaryCodec.peekChatSignature(frame), frame.length)) {
+			return;
+		}
+		try {
+			socket.handleFrame(frame);
+		}
+		catch(Exception e) {
+			//The frame was complete, so the next frame can still be read
+			socket.getStats().countInvalid();
+		}
+	}
+
+}
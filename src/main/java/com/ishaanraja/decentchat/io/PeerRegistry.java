@@ -0,0 +1,116 @@
+package com.ishaanraja.decentchat.io;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+/**
+ * The client's connected peers, shared by the NodeManager, the DecentListener and the DecentPeerChecker.
+ *
+ * Lookups go through a ConcurrentHashMap and never block. Admitting and removing peers is serialized, so the
+ * maximum number of connections cannot be exceeded by peers connecting at the same time. Every change also
+ * publishes a new array of the connected sockets, which broadcasts iterate without copying or locking.
+ */
+public final class PeerRegistry {
+
+	private static final DecentSocket[] EMPTY = new DecentSocket[0];
+
+	private final ConcurrentHashMap<InetAddress, DecentSocket> peers;
+	private final int capacity;
+	//Replaced, never modified, whenever a peer is admitted or removed
+	private volatile DecentSocket[] snapshot;
+
+	/**
+	 * Creates an empty registry.
+	 *
+	 * @param capacity The maximum number of peers
+	 */
+	public PeerRegistry(int capacity) {
+		this.peers = new ConcurrentHashMap<InetAddress, DecentSocket>();
+		this.capacity = capacity;
+		this.snapshot = EMPTY;
+	}
+
+	/**
+	 * Adds a socket as a peer if the registry is not full, its address is not already a peer and the
+	 * address passes the given check. The checks and the insertion happen atomically.
+	 *
+	 * @param socket The socket to add
+	 * @param eligible Any further checks on the socket's address
+	 * @return true if the socket was added
+	 */
+	public synchronized boolean admit(DecentSocket socket, Predicate<InetAddress> eligible) {
+		InetAddress address = socket.getInetAddress();
+		if(isFull() || peers.containsKey(address) || !eligible.test(address)) {
+			return false;
+		}
+		peers.put(address, socket);
+		publish();
+		return true;
+	}
+	/**
+	 * Removes a peer. Does nothing if the socket is not the peer at its address, so that a stale socket
+	 * cannot remove a newer one.
+	 *
+	 * @param socket The socket of the peer to remove
+	 * @return true if the socket was removed
+	 */
+	public synchronized boolean remove(DecentSocket socket) {
+		if(!peers.remove(socket.getInetAddress(), socket)) {
+			return false;
+		}
+		publish();
+		return true;
+	}
+	private void publish() {
+		snapshot = peers.values().toArray(EMPTY);
+	}
+	/**
+	 * @param address The address of the peer
+	 * @return The peer's socket or null if the address is not a peer
+	 */
+	public DecentSocket get(InetAddress address) {
+		return peers.get(address);
+	}
+	/**
+	 * @param address The address to check
+	 * @return true if the address is a peer
+	 */
+	public boolean contains(InetAddress address) {
+		return peers.containsKey(address);
+	}
+	/**
+	 * @return The number of peers
+	 */
+	public int size() {
+		return snapshot.length;
+	}
+	/**
+	 * @return true if no more peers can be admitted
+	 */
+	public boolean isFull() {
+		return size() >= capacity;
+	}
+	/**
+	 * Returns the sockets of every peer at the time of the last change. The array is shared and must not be
+	 * modified. It does not change as peers come and go, so it can be iterated while sockets remove themselves.
+	 *
+	 * @return The peers' sockets
+	 */
+	public DecentSocket[] snapshot() {
+		return snapshot;
+	}
+	/**
+	 * @return A new list of the addresses of every peer
+	 */
+	public ArrayList<InetAddress> getAddresses() {
+		DecentSocket[] current = snapshot;
+		ArrayList<InetAddress> addresses = new ArrayList<InetAddress>(current.length);
+		for(DecentSocket socket: current) {
+			addresses.add(socket.getInetAddress());
+		}
+		return addresses;
+	}
+
+}
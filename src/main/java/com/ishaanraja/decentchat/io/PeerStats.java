@@ -0,0 +1,228 @@
+package com.ishaanraja.decentchat.io;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+
+import com.google.gson.JsonObject;
+
+/**
+ * Traffic and latency statistics of a single peer connection.
+ *
+ * Frames and bytes are counted per message type in both directions. The counters are LongAdders, which
+ * stripe contended increments over several cells, so counting costs the reading and writing threads next
+ * to nothing.
+ */
+public final class PeerStats {
+
+	/**
+	 * The counters of one message type.
+	 */
+	private static class TypeCounters {
+
+		private final LongAdder framesIn = new LongAdder();
+		private final LongAdder bytesIn = new LongAdder();
+		private final LongAdder framesOut = new LongAdder();
+		private final LongAdder bytesOut = new LongAdder();
+
+	}
+
+	private final long connectedAt;
+	private final Map<String, TypeCounters> types;
+	private final LongAdder duplicatesIn;
+	private final LongAdder duplicateBytesIn;
+	private final LongAdder invalid;
+	private final LongAdder dropped;
+	private final LongAccumulator maxQueueDepth;
+	private final RoundTripTime roundTripTime;
+	private final IntSupplier queueDepth;
+
+	PeerStats(RoundTripTime roundTripTime, IntSupplier queueDepth) {
+		this.connectedAt = System.currentTimeMillis();
+		this.types = new ConcurrentHashMap<String, TypeCounters>();
+		this.duplicatesIn = new LongAdder();
+		this.duplicateBytesIn = new LongAdder();
+		this.invalid = new LongAdder();
+		this.dropped = new LongAdder();
+		this.maxQueueDepth = new LongAccumulator(Math::max, 0);
+		this.roundTripTime = roundTripTime;
+		this.queueDepth = queueDepth;
+	}
+
+	private TypeCounters getCounters(String type) {
+		TypeCounters counters = types.get(type);
+		if(counters == null) {
+			counters = types.computeIfAbsent(type, t -> new TypeCounters());
+		}
+		return counters;
+	}
+	/**
+	 * Counts a received message.
+	 *
+	 * @param type The message type
+	 * @param bytes The size of the message on the wire
+	 */
+	void countReceived(String type, int bytes) {
+		TypeCounters counters = getCounters(type);
+		counters.framesIn.increment();
+		counters.bytesIn.add(bytes);
+	}
+	/**
+	 * Counts a sent message.
+	 *
+	 * @param type The message type
+	 * @param bytes The size of the message on the wire
+	 */
+	void countSent(String type, int bytes) {
+		TypeCounters counters = getCounters(type);
+		counters.framesOut.increment();
+		counters.bytesOut.add(bytes);
+	}
+	/**
+	 * Counts a chat message that was dropped by the duplicate filter before being decoded.
+	 *
+	 * @param bytes The size of the message on the wire
+	 */
+	void countDuplicate(int bytes) {
+		duplicatesIn.increment();
+		duplicateBytesIn.add(bytes);
+	}
+	/**
+	 * Counts a received frame that could not be decoded or handled.
+	 */
+	void countInvalid() {
+		invalid.increment();
+	}
+	/**
+	 * Counts an outgoing message that was dropped because the sending queue was full.
+	 */
+	void countDropped() {
+		dropped.increment();
+	}
+	/**
+	 * Records the depth of the sending queue after a message was queued.
+	 *
+	 * @param depth The number of queued messages
+	 */
+	void recordQueueDepth(int depth) {
+		maxQueueDepth.accumulate(depth);
+	}
+	/**
+	 * @return How long the connection has been open, in milliseconds
+	 */
+	public long getAgeMillis() {
+		return System.currentTimeMillis()-connectedAt;
+	}
+	/**
+	 * @return The number of decoded messages received, over every type
+	 */
+	public long getFramesIn() {
+		long sum = 0;
+		for(TypeCounters c: types.values()) {
+			sum += c.framesIn.sum();
+		}
+		return sum;
+	}
+	/**
+	 * @return The number of bytes received, including dropped duplicates
+	 */
+	public long getBytesIn() {
+		long sum = duplicateBytesIn.sum();
+		for(TypeCounters c: types.values()) {
+			sum += c.bytesIn.sum();
+		}
+		return sum;
+	}
+	/**
+	 * @return The number of messages sent, over every type
+	 */
+	public long getFramesOut() {
+		long sum = 0;
+		for(TypeCounters c: types.values()) {
+			sum += c.framesOut.sum();
+		}
+		return sum;
+	}
+	/**
+	 * @return The number of bytes sent
+	 */
+	public long getBytesOut() {
+		long sum = 0;
+		for(TypeCounters c: types.values()) {
+			sum += c.bytesOut.sum();
+		}
+		return sum;
+	}
+	/**
+	 * @return The number of duplicate chat messages dropped before being decoded
+	 */
+	public long getDuplicatesIn() {
+		return duplicatesIn.sum();
+	}
+	/**
+	 * @return The number of received frames that could not be decoded or handled
+	 */
+	public long getInvalid() {
+		return invalid.sum();
+	}
+	/**
+	 * @return The number of messages waiting to be written to the peer
+	 */
+	public int getQueueDepth() {
+		return queueDepth.getAsInt();
+	}
+	/**
+	 * @return The highest number of messages that were waiting to be written to the peer at once
+	 */
+	public long getMaxQueueDepth() {
+		return maxQueueDepth.get();
+	}
+	/**
+	 * @return The number of outgoing messages dropped because the sending queue was full
+	 */
+	public long getDropped() {
+		return dropped.sum();
+	}
+	/**
+	 * @return The round trip times measured by pinging the peer
+	 */
+	public RoundTripTime getRoundTripTime() {
+		return roundTripTime;
+	}
+	/**
+	 * Returns every statistic of the connection as a JSON object, for tools that monitor the client.
+	 *
+	 * @return The statistics as JSON
+	 */
+	public JsonObject toJson() {
+		JsonObject json = new JsonObject();
+		json.addProperty("ageMillis", getAgeMillis());
+		json.addProperty("queueDepth", getQueueDepth());
+		json.addProperty("maxQueueDepth", getMaxQueueDepth());
+		json.addProperty("dropped", getDropped());
+		json.addProperty("invalid", getInvalid());
+		json.addProperty("duplicatesIn", getDuplicatesIn());
+		json.addProperty("duplicateBytesIn", duplicateBytesIn.sum());
+		JsonObject rtt = new JsonObject();
+		rtt.addProperty("samples", roundTripTime.getSamples());
+		rtt.addProperty("smoothedMillis", roundTripTime.getSmoothedMillis());
+		rtt.addProperty("minMillis", roundTripTime.getMinMillis());
+		rtt.addProperty("maxMillis", roundTripTime.getMaxMillis());
+		json.add("rtt", rtt);
+		JsonObject typesJson = new JsonObject();
+		for(Map.Entry<String, TypeCounters> e: new TreeMap<String, TypeCounters>(types).entrySet()) {
+			JsonObject type = new JsonObject();
+			type.addProperty("framesIn", e.getValue().framesIn.sum());
+			type.addProperty("bytesIn", e.getValue().bytesIn.sum());
+			type.addProperty("framesOut", e.getValue().framesOut.sum());
+			type.addProperty("bytesOut", e.getValue().bytesOut.sum());
+			typesJson.add(e.getKey(), type);
+		}
+		json.add("types", typesJson);
+		return json;
+	}
+
+}
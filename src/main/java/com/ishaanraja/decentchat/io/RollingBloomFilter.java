@@ -0,0 +1,84 @@
+package com.ishaanraja.decentchat.io;
+
+import java.util.Arrays;
+
+/**
+ * A fixed size set of message signatures that may give false positives but never false negatives, and that
+ * forgets old signatures as new ones are added.
+ *
+ * Signatures are added to the current generation. Once it holds GENERATION_CAPACITY signatures it becomes the
+ * previous generation and a new, empty one is started, so the filter always remembers at least the last
+ * GENERATION_CAPACITY signatures in a constant 16 KB. With 16 bits and 11 hashes per signature, the false positive
+ * rate is roughly 0.05% per generation.
+ *
+ * Since the trailing bytes of an RSA signature are already uniformly distributed, the hash positions are taken
+ * directly from them instead of hashing the signature again.
+ */
+class RollingBloomFilter {
+
+	private static final int GENERATION_CAPACITY = 4096;
+	private static final int BITS = GENERATION_CAPACITY * 16;
+	private static final int HASHES = 11;
+
+	private long[] current;
+	private long[] previous;
+	private int currentCount;
+
+	RollingBloomFilter() {
+		this.current = new long[BITS / 64];
+		this.previous = new long[BITS / 64];
+	}
+	/**
+	 * Adds a signature to the filter.
+	 *
+	 * @param signature The raw bytes of the signature
+	 */
+	synchronized void add(byte[] signature) {
+		if(currentCount == GENERATION_CAPACITY) {
+			long[] cleared = previous;
+			Arrays.fill(cleared, 0);
+			previous = current;
+			current = cleared;
+			currentCount = 0;
+		}
+		long h1 = getLong(signature, 16);
+		//An odd step visits distinct bits for every hash, since BITS is a power of two
+		long h2 = getLong(signature, 8) | 1;
+		for(int i=0;i<HASHES;i++) {
+			int bit = (int) ((h1+i*h2) & (BITS-1));
+			current[bit >>> 6] |= 1L << bit;
+		}
+		currentCount++;
+	}
+	/**
+	 * Returns whether a signature may have been added within the last one to two generations.
+	 *
+	 * @param signature The raw bytes of the signature
+	 * @return true if the signature was probably added, false if it definitely was not
+	 */
+	synchronized boolean mightContain(byte[] signature) {
+		long h1 = getLong(signature, 16);
+		long h2 = getLong(signature, 8) | 1;
+		return contains(current, h1, h2) || contains(previous, h1, h2);
+	}
+	private static boolean contains(long[] bits, long h1, long h2) {
+		for(int i=0;i<HASHES;i++) {
+			int bit = (int) ((h1+i*h2) & (BITS-1));
+			if((bits[bit >>> 6] & (1L << bit)) == 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+	/**
+	 * Reads 8 bytes starting fromEnd bytes before the end of the signature as a long, treating missing bytes as 0.
+	 */
+	private static long getLong(byte[] bytes, int fromEnd) {
+		long value = 0;
+		for(int i=bytes.length-fromEnd;i<bytes.length-fromEnd+8;i++) {
+			value = (value << 8) | (i >= 0 ? bytes[i] & 0xFF : 0);
+		}
+		return value;
+	}
+
+}
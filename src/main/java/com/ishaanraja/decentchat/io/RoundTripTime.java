@@ -0,0 +1,72 @@
+package com.ishaanraja.decentchat.io;
+
+/**
+ * The round trip times measured by pinging a peer.
+ *
+ * The smoothed round trip time is an exponentially weighted moving average that gives each new sample
+ * a weight of 1/8, like TCP does.
+ */
+public final class RoundTripTime {
+
+	private static final double SMOOTHING = 1.0/8;
+
+	private long samples;
+	private double smoothedMillis;
+	private double minMillis;
+	private double maxMillis;
+
+	RoundTripTime() {}
+
+	/**
+	 * Records one round trip time sample.
+	 *
+	 * @param nanos The round trip time in nanoseconds
+	 */
+	synchronized void record(long nanos) {
+		double millis = nanos/1000000.0;
+		if(samples == 0) {
+			smoothedMillis = millis;
+			minMillis = millis;
+			maxMillis = millis;
+		}
+		else {
+			smoothedMillis += SMOOTHING*(millis-smoothedMillis);
+			minMillis = Math.min(minMillis, millis);
+			maxMillis = Math.max(maxMillis, millis);
+		}
+		samples++;
+	}
+	/**
+	 * @return The number of samples recorded
+	 */
+	public synchronized long getSamples() {
+		return samples;
+	}
+	/**
+	 * @return The smoothed round trip time in milliseconds, or 0 if there are no samples
+	 */
+	public synchronized double getSmoothedMillis() {
+		return smoothedMillis;
+	}
+	/**
+	 * @return The lowest round trip time in milliseconds, or 0 if there are no samples
+	 */
+	public synchronized double getMinMillis() {
+		return minMillis;
+	}
+	/**
+	 * @return The highest round trip time in milliseconds, or 0 if there are no samples
+	 */
+	public synchronized double getMaxMillis() {
+		return maxMillis;
+	}
+
+	@Override
+	public synchronized String toString() {
+		if(samples == 0) {
+			return "no RTT samples";
+		}
+		return String.format("RTT %.1f ms (min %.1f, max %.1f, %d samples)", smoothedMillis, minMillis, maxMillis, samples);
+	}
+
+}
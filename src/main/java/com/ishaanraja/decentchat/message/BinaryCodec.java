@@ -0,0 +1,312 @@
+package com.ishaanraja.decentchat.message;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * Encodes and decodes messages in DecentChat's compact binary framing, an alternative to newline delimited JSON.
+ *
+ * A frame is laid out as [byte FRAME_MARKER][int payload length][payload]. Since every JSON line starts with '{'
+ * (or the EOT character), the first byte of a frame tells the two framings apart. The payload is:
+ * <ul>
+ * <li>[byte type id][UTF version][long timestamp], shared by every message type
+ * <li>chat - [UTF username][key bytes][UTF message][signature bytes][int nonce]
+ * <li>peers - [short count] followed by count [byte length][raw address] entries
+ * <li>pong - [int difficulty]
+ * <li>historyAsk - [int number of messages]
+ * <li>history - [short count] followed by count chat messages, each with their own [UTF version][long timestamp]
+ * <li>inv and getData - [short count] followed by count raw message IDs of InventoryMessage.ID_LENGTH bytes
+ * <li>graft - the same as getData
+ * <li>ping, peerAsk and prune have no body
+ * </ul>
+ * Public keys and signatures are sent as raw bytes prefixed by a short length instead of as Base 64 text.
+ *
+ * A client only sends binary frames to a peer after receiving a message from it with a version of at least
+ * MINIMUM_VERSION, but always accepts both framings.
+ */
+public final class BinaryCodec {
+
+	public static final byte FRAME_MARKER = (byte) 0xDC;
+	public static final int HEADER_SIZE = 5;
+	/**
+	 * The largest payload a peer may send. A full HistoryMessage is well below this.
+	 */
+	public static final int MAX_PAYLOAD_LENGTH = 1024 * 1024;
+	/**
+	 * The first DecentChat version that understands binary frames.
+	 */
+	public static final String MINIMUM_VERSION = "1.1";
+
+	private static final String[] TYPES = {"chat", "peerAsk", "peers", "ping", "pong", "historyAsk", "history", "inv", "getData", "prune", "graft"};
+
+	private BinaryCodec() {}
+
+	/**
+	 * Returns whether a peer running the given DecentChat version can decode binary frames.
+	 *
+	 * @param version The version advertised in one of the peer's messages
+	 * @return true/false if binary frames can be sent to the peer
+	 */
+	public static boolean isSupportedBy(String version) {
+		return Message.compareVersions(version, MINIMUM_VERSION) >= 0;
+	}
+	/**
+	 * Encodes a message into a complete frame, including its marker and length prefix.
+	 *
+	 * @param m The message to encode
+	 * @return The frame, or null if the message cannot be represented exactly in binary (e.g. it has missing fields
+	 * or a key that is not canonical Base 64) and should be sent as JSON instead
+	 */
+	public static byte[] encode(Message m) {
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream(512);
+			DataOutputStream out = new DataOutputStream(bytes);
+			//Placeholder for the header, filled in once the payload length is known
+			out.write(new byte[HEADER_SIZE]);
+			out.writeByte(getTypeId(m.getType()));
+			writeBody(out, m);
+			byte[] frame = bytes.toByteArray();
+			int length = frame.length-HEADER_SIZE;
+			if(length > MAX_PAYLOAD_LENGTH) {
+				return null;
+			}
+			frame[0] = FRAME_MARKER;
+			frame[1] = (byte) (length >>> 24);
+			frame[2] = (byte) (length >>> 16);
+			frame[3] = (byte) (length >>> 8);
+			frame[4] = (byte) length;
+			return frame;
+		}
+		catch(Exception e) {
+			return null;
+		}
+	}
+	/**
+	 * Decodes the payload of a frame (everything after the length prefix) into its message.
+	 *
+	 * @param payload The frame's payload
+	 * @return The decoded message
+	 * @throws IOException If the payload is truncated or not a known message type
+	 */
+	public static Message decode(byte[] payload) throws IOException {
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+		int typeId = in.readUnsignedByte();
+		if(typeId >= TYPES.length) {
+			throw new IOException("Unknown binary message type "+typeId);
+		}
+		String version = in.readUTF();
+		long timestamp = in.readLong();
+		Message m;
+		switch(TYPES[typeId]) {
+			case "chat":
+				m = readChatMessage(in);
+				break;
+			case "peerAsk":
+				m = new PeerAskMessage();
+				break;
+			case "peers":
+				int peerCount = in.readUnsignedShort();
+				List<InetAddress> peers = new ArrayList<InetAddress>(peerCount);
+				for(int i=0;i<peerCount;i++) {
+					//Throws UnknownHostException (an IOException) for addresses of the wrong length
+					peers.add(InetAddress.getByAddress(readBytes(in, in.readUnsignedByte())));
+				}
+				m = new PeersMessage(peers);
+				break;
+			case "ping":
+				m = new PingMessage();
+				break;
+			case "pong":
+				m = new PongMessage(in.readInt());
+				break;
+			case "historyAsk":
+				m = new HistoryAskMessage(in.readInt());
+				break;
+			case "inv":
+				m = new InventoryMessage(readIds(in));
+				break;
+			case "getData":
+				m = new GetDataMessage(readIds(in));
+				break;
+			case "prune":
+				m = new PruneMessage();
+				break;
+			case "graft":
+				m = new GraftMessage(readIds(in));
+				break;
+			case "history":
+				int messageCount = in.readUnsignedShort();
+				ChatMessage[] history = new ChatMessage[messageCount];
+				for(int i=0;i<messageCount;i++) {
+					String chatVersion = in.readUTF();
+					long chatTimestamp = in.readLong();
+					history[i] = readChatMessage(in);
+					history[i].version = chatVersion;
+					history[i].timestamp = chatTimestamp;
+				}
+				m = new HistoryMessage(history);
+				break;
+			default:
+				throw new IOException("Unknown binary message type "+typeId);
+		}
+		m.version = version;
+		m.timestamp = timestamp;
+		return m;
+	}
+	/**
+	 * Finds the signature of a chat message frame without decoding the rest of the frame, so that duplicates can be
+	 * dropped cheaply.
+	 *
+	 * @param payload The frame's payload
+	 * @return The raw signature bytes or null if the frame is not a chat message (or is malformed)
+	 */
+	public static byte[] peekChatSignature(byte[] payload) {
+		if(payload.length == 0 || payload[0] != 0) {
+			return null;
+		}
+		int position = 1;
+		//Skip version
+		position = skipLengthPrefixed(payload, position);
+		//Skip timestamp
+		position = position < 0 ? -1 : position+8;
+		//Skip username, public key and message
+		for(int i=0;i<3;i++) {
+			position = skipLengthPrefixed(payload, position);
+		}
+		if(position < 0 || position+2 > payload.length) {
+			return null;
+		}
+		int length = ((payload[position] & 0xFF) << 8) | (payload[position+1] & 0xFF);
+		int start = position+2;
+		if(length == 0 || start+length > payload.length) {
+			return null;
+		}
+		return Arrays.copyOfRange(payload, start, start+length);
+	}
+	/**
+	 * Returns the position right after a field with an unsigned short length prefix, or -1 if it runs past the payload.
+	 */
+	private static int skipLengthPrefixed(byte[] payload, int position) {
+		if(position < 0 || position+2 > payload.length) {
+			return -1;
+		}
+		int next = position+2+(((payload[position] & 0xFF) << 8) | (payload[position+1] & 0xFF));
+		return next <= payload.length ? next : -1;
+	}
+	private static void writeBody(DataOutputStream out, Message m) throws IOException {
+		out.writeUTF(m.getVersion());
+		out.writeLong(m.getTimestamp());
+		if(m instanceof ChatMessage) {
+			writeChatMessage(out, (ChatMessage) m);
+		}
+		else if(m instanceof PeersMessage) {
+			List<InetAddress> peers = ((PeersMessage) m).getPeers();
+			out.writeShort(checkCount(peers.size()));
+			for(InetAddress p: peers) {
+				byte[] address = p.getAddress();
+				out.writeByte(address.length);
+				out.write(address);
+			}
+		}
+		else if(m instanceof PongMessage) {
+			out.writeInt(((PongMessage) m).getDifficulty());
+		}
+		else if(m instanceof HistoryAskMessage) {
+			out.writeInt(((HistoryAskMessage) m).getNumMessages());
+		}
+		else if(m instanceof HistoryMessage) {
+			ChatMessage[] history = ((HistoryMessage) m).getMessageHistory();
+			out.writeShort(checkCount(history.length));
+			for(ChatMessage c: history) {
+				out.writeUTF(c.getVersion());
+				out.writeLong(c.getTimestamp());
+				writeChatMessage(out, c);
+			}
+		}
+		else if(m instanceof InventoryMessage) {
+			writeIds(out, ((InventoryMessage) m).getIds());
+		}
+		else if(m instanceof GetDataMessage) {
+			writeIds(out, ((GetDataMessage) m).getIds());
+		}
+		else if(m instanceof GraftMessage) {
+			writeIds(out, ((GraftMessage) m).getIds());
+		}
+	}
+	private static void writeIds(DataOutputStream out, List<String> ids) throws IOException {
+		out.writeShort(checkCount(ids.size()));
+		for(String id: ids) {
+			byte[] raw = InventoryMessage.decodeId(id);
+			if(raw == null || !InventoryMessage.getId(raw).equals(id)) {
+				throw new IllegalArgumentException("Invalid message ID");
+			}
+			out.write(raw);
+		}
+	}
+	private static List<String> readIds(DataInputStream in) throws IOException {
+		int count = in.readUnsignedShort();
+		List<String> ids = new ArrayList<String>(count);
+		for(int i=0;i<count;i++) {
+			ids.add(InventoryMessage.getId(readBytes(in, InventoryMessage.ID_LENGTH)));
+		}
+		return ids;
+	}
+	private static void writeChatMessage(DataOutputStream out, ChatMessage m) throws IOException {
+		out.writeUTF(m.getUsername());
+		writeBase64(out, m.getPubKey());
+		out.writeUTF(m.getMessage());
+		writeBase64(out, m.getSignature());
+		out.writeInt(m.getNonce());
+	}
+	private static ChatMessage readChatMessage(DataInputStream in) throws IOException {
+		String username = in.readUTF();
+		String pubKey = readBase64(in);
+		String message = in.readUTF();
+		String signature = readBase64(in);
+		int nonce = in.readInt();
+		return new ChatMessage(username, pubKey, message, signature, nonce);
+	}
+	/**
+	 * Writes a Base 64 String as its raw bytes. Since identifiers are hashed from the Base 64 text of a key, only
+	 * canonical Base 64 is accepted, so that decoding it again gives back the exact same String.
+	 */
+	private static void writeBase64(DataOutputStream out, String base64) throws IOException {
+		byte[] raw = Base64.getDecoder().decode(base64);
+		if(!Base64.getEncoder().encodeToString(raw).equals(base64)) {
+			throw new IllegalArgumentException("Not canonical Base 64");
+		}
+		out.writeShort(checkCount(raw.length));
+		out.write(raw);
+	}
+	private static String readBase64(DataInputStream in) throws IOException {
+		return Base64.getEncoder().encodeToString(readBytes(in, in.readUnsignedShort()));
+	}
+	private static byte[] readBytes(DataInputStream in, int length) throws IOException {
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return bytes;
+	}
+	private static int checkCount(int count) {
+		if(count > 0xFFFF) {
+			throw new IllegalArgumentException("Too many elements for a binary frame");
+		}
+		return count;
+	}
+	private static int getTypeId(String type) {
+		for(int i=0;i<TYPES.length;i++) {
+			if(TYPES[i].equals(type)) {
+				return i;
+			}
+		}
+		throw new IllegalArgumentException("Unknown message type "+type);
+	}
+
+}
@@ -2,14 +2,13 @@ package com.ishaanraja.decentchat.message;
 
 import java.security.PrivateKey;
 import java.security.PublicKey;
-import java.security.Signature;
 import java.time.Instant;
 import java.util.Base64;
 
 import com.ishaanraja.decentchat.config.DecentConfig;
 import com.ishaanraja.decentchat.config.DecentLogger;
-import com.ishaanraja.decentchat.crypto.HashUtils;
 import com.ishaanraja.decentchat.crypto.KeyUtils;
+import com.ishaanraja.decentchat.crypto.PublicKeyCache;
 
 public class ChatMessage extends Message {
 	
@@ -20,6 +19,8 @@ public class ChatMessage extends Message {
 	private int nonce;
 	
 	private transient String identifier;
+	//Cached result of toString()
+	private transient String displayString;
 	
 	/** 
 	 * Creates a ChatMessage object and calculates the required nonce/signature.
@@ -51,12 +52,27 @@ public class ChatMessage extends Message {
 		}
 		catch(Exception e) {
 			String logMsg = String.format("Unable to create message \"%s\" because %s", message, e.getCause());
-			DecentLogger.write(logMsg);
+			DecentLogger.write(DecentLogger.Level.WARN, logMsg);
 		}
 	}
+	/**
+	 * Creates a ChatMessage object from already known fields. Used when decoding a received message.
+	 * 
+	 * @see com.ishaanraja.decentchat.message.BinaryCodec
+	 */
+	ChatMessage(String username, String pubKey, String message, String signature, int nonce) {
+		super("chat");
+		this.username = username;
+		this.pubKey = pubKey;
+		this.message = message;
+		this.signature = signature;
+		this.nonce = nonce;
+	}
 	/** 
-	 * Iterates through testNonce until the digest+testNonce equals or exceeds the current 
-	 * difficulty.
+	 * Searches for a testNonce such that the digest+testNonce equals or exceeds the current 
+	 * difficulty. The search is split across the ProofOfWorkSearcher's worker threads.
+	 * 
+	 * @see com.ishaanraja.decentchat.message.ProofOfWorkSearcher
 	 * 
 	 * @param privateKey
 	 * @param text The digest of the message (type+message+timestamp)
@@ -64,16 +80,7 @@ public class ChatMessage extends Message {
 	 * @throws Exception
 	 */
 	private int getNonce(PrivateKey privateKey, String text) throws Exception {
-		int testNonce = 0;
-		Signature privateSignature = Signature.getInstance("SHA256withRSA");
-		privateSignature.initSign(privateKey);
-		byte[] sigBytes = privateSignature.sign();
-		while(!isProofOfWorkValid(sigBytes) && testNonce < Integer.MAX_VALUE) {
-			testNonce++;
-			privateSignature.update((text+testNonce).getBytes("UTF-8"));
-			sigBytes = privateSignature.sign();
-		}
-		return testNonce;
+		return ProofOfWorkSearcher.search(privateKey, text);
 	}
 	
 	/**
@@ -93,6 +100,17 @@ public class ChatMessage extends Message {
 
 	@Override
 	public boolean isValid() {
+		return isValidExceptSignature() && isSignatureValid();
+	}
+	/**
+	 * Runs every check of isValid() except for the signature check, which is by far the most expensive.
+	 * This allows invalid messages to be thrown away cheaply before their signature is verified.
+	 * 
+	 * @see com.ishaanraja.decentchat.message.ChatMessage#isValid()
+	 * 
+	 * @return true/false if the message's timestamp, bounds and proof of work are valid
+	 */
+	public boolean isValidExceptSignature() {
 		try {
 			long now = Instant.now().getEpochSecond();
 			long timestampTolerance = DecentConfig.TIMESTAMP_TOLERANCE;
@@ -104,19 +122,24 @@ public class ChatMessage extends Message {
 			valid &= message.trim().length() >= 1 && message.length() <= DecentConfig.MAX_MESSAGE_LENGTH;
 			//Validate proof of work
 			byte[] sigBytes = Base64.getDecoder().decode(signature);
-			if(valid && isProofOfWorkValid(sigBytes)) {
-				//Validate signature
-				String digest = type+message+timestamp+nonce;
-				PublicKey pkey = KeyUtils.getPublicKeyFromString(pubKey);
-				try {
-					return KeyUtils.verify(digest, signature, pkey);
-				} catch (Exception e) {
-					DecentLogger.write("Failed to verify message signature");
-				}
-			}	
+			return valid && isProofOfWorkValid(sigBytes);
 		}
 		catch(Exception e) {
-			DecentLogger.write("Failed to check message validity due to "+e.getMessage());
+			DecentLogger.write(DecentLogger.Level.WARN, "Failed to check message validity due to "+e.getMessage());
+		}
+		return false;
+	}
+	/**
+	 * Assembles the message's digest and, using the message's public key, verifies that the message is signed properly.
+	 * 
+	 * @return true/false if the signature is valid
+	 */
+	public boolean isSignatureValid() {
+		try {
+			String digest = type+message+timestamp+nonce;
+			return PublicKeyCache.verify(digest, signature, pubKey);
+		} catch (Exception e) {
+			DecentLogger.write(DecentLogger.Level.WARN, "Failed to verify message signature");
 		}
 		return false;
 	}
@@ -145,18 +168,11 @@ public class ChatMessage extends Message {
 			valid &= username.length() >= 1 && username.length() <= DecentConfig.MAX_MESSAGE_LENGTH;
 			valid &= message.trim().length() >= 1 && message.length() <= DecentConfig.MAX_MESSAGE_LENGTH;
 			if(valid) {
-				//Validate signature
-				String digest = type+message+timestamp+nonce;
-				PublicKey pkey = KeyUtils.getPublicKeyFromString(pubKey);
-				try {
-					return KeyUtils.verify(digest, signature, pkey);
-				} catch (Exception e) {
-					DecentLogger.write("Failed to verify message signature");
-				}
+				return isSignatureValid();
 			}	
 		}
 		catch(Exception e) {
-			DecentLogger.write("Failed to check message validity due to "+e.getMessage());
+			DecentLogger.write(DecentLogger.Level.WARN, "Failed to check message validity due to "+e.getMessage());
 		}
 		return false;
 	}
@@ -167,7 +183,7 @@ public class ChatMessage extends Message {
 	 * @param sigBytes byte array of the RSA signature to check
 	 * @return true/false whether the given sigBytes meets the current network difficulty
 	 */
-	private static boolean isProofOfWorkValid(byte[] sigBytes) {
+	public static boolean isProofOfWorkValid(byte[] sigBytes) {
 		//Check if signature meets our difficulty
 		int difficultyStandard = DecentConfig.getDifficulty();
 		//Check leading bytes
@@ -209,9 +225,25 @@ public class ChatMessage extends Message {
 	public String getPubKey() {
 		return pubKey;
 	}
+	/**
+	 * Returns the chat message exactly as it was signed, without any cleaning.
+	 * 
+	 * @return The raw chat message
+	 */
+	public String getMessage() {
+		return message;
+	}
 	public String getSignature() {
 		return signature;
 	}
+	/**
+	 * Returns the nonce that was appended to the digest to meet the proof of work.
+	 * 
+	 * @return The proof of work nonce
+	 */
+	public int getNonce() {
+		return nonce;
+	}
 	/**
 	 * Returns the 10 character identifier of the public key. 
 	 * A message's identifier is the first 10 characters of the SHA-256 hash of the sender's public key. 
@@ -219,7 +251,7 @@ public class ChatMessage extends Message {
 	 */
 	public String getIdentifier() {
 		if(identifier == null) {
-			identifier = HashUtils.getIdentifier(pubKey);
+			identifier = PublicKeyCache.getIdentifier(pubKey);
 		}
 		return identifier;
 	}
@@ -232,9 +264,12 @@ public class ChatMessage extends Message {
 	 * General format: [username]@[identifier]: [chat message]
 	 */
 	public String toString() {
-		String identifier = getIdentifier();
-		String formattedMessage = username+"@"+identifier+": "+message.trim();
-		return cleanString(formattedMessage);
+		if(displayString == null) {
+			String identifier = getIdentifier();
+			String formattedMessage = username+"@"+identifier+": "+message.trim();
+			displayString = cleanString(formattedMessage);
+		}
+		return displayString;
 	}
 	
 	/**
@@ -245,17 +280,17 @@ public class ChatMessage extends Message {
 	 * @return The "cleaned" String
 	 */
 	private static String cleanString(String s) {
-		String cleanedStr = "";
-		char[] stringArr = s.toCharArray();
-		for(char c: stringArr) {
+		StringBuilder cleanedStr = new StringBuilder(s.length());
+		for(int i=0;i<s.length();i++) {
+			char c = s.charAt(i);
 			if(Character.isWhitespace(c)) {
-				cleanedStr+=" ";
+				cleanedStr.append(' ');
 			}
 			else if(!Character.isISOControl(c)) {
-				cleanedStr+=c;
+				cleanedStr.append(c);
 			}
 		}
-		return cleanedStr;
+		return cleanedStr.toString();
 	}
 
 }
@@ -0,0 +1,78 @@
+package com.ishaanraja.decentchat.message;
+
+import java.util.Base64;
+
+/**
+ * A message together with its wire encodings, which are computed at most once and then shared by every
+ * DecentSocket the message is sent to. This way broadcasting a message to every peer costs one JSON
+ * serialization and one binary encoding, no matter how many peers there are.
+ *
+ * The returned byte arrays are shared and must never be modified.
+ */
+public final class EncodedMessage {
+
+	private final Message message;
+	private volatile byte[] jsonLine;
+	private volatile byte[] binaryFrame;
+	private volatile boolean binaryUnsupported;
+	private volatile byte[] chatSignature;
+
+	public EncodedMessage(Message message) {
+		this.message = message;
+	}
+
+	public Message getMessage() {
+		return message;
+	}
+	/**
+	 * Returns the raw signature of a chat message, used to track which peers already have the message.
+	 *
+	 * @return The decoded signature or null if the message is not a chat message with a valid signature
+	 */
+	public byte[] getChatSignature() {
+		byte[] signature = chatSignature;
+		if(signature == null && message instanceof ChatMessage && ((ChatMessage) message).getSignature() != null) {
+			try {
+				signature = Base64.getDecoder().decode(((ChatMessage) message).getSignature());
+				chatSignature = signature;
+			}
+			catch(IllegalArgumentException e) {
+				return null;
+			}
+		}
+		return signature;
+	}
+	/**
+	 * Returns the message as a newline terminated JSON line.
+	 *
+	 * @return The encoded JSON line
+	 */
+	public byte[] getJsonLine() {
+		byte[] line = jsonLine;
+		if(line == null) {
+			//Two threads may both encode the message, which is harmless since the results are equal
+			line = JsonCodec.encodeLine(message);
+			jsonLine = line;
+		}
+		return line;
+	}
+	/**
+	 * Returns the message as a binary frame.
+	 *
+	 * @see com.ishaanraja.decentchat.message.BinaryCodec#encode(Message)
+	 *
+	 * @return The encoded frame or null if the message must be sent as JSON
+	 */
+	public byte[] getBinaryFrame() {
+		byte[] frame = binaryFrame;
+		if(frame == null && !binaryUnsupported) {
+			frame = BinaryCodec.encode(message);
+			if(frame == null) {
+				binaryUnsupported = true;
+			}
+			binaryFrame = frame;
+		}
+		return frame;
+	}
+
+}
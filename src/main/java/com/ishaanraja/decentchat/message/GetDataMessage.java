@@ -0,0 +1,46 @@
+package com.ishaanraja.decentchat.message;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.ishaanraja.decentchat.config.DecentConfig;
+
+/**
+ * Requests the chat messages with the given IDs, in reply to an InventoryMessage.
+ * 
+ * @see com.ishaanraja.decentchat.message.InventoryMessage
+ */
+public class GetDataMessage extends Message {
+	
+	private List<String> ids;
+	
+	public GetDataMessage(List<String> ids) {
+		super("getData");
+		this.ids = new ArrayList<String>(ids);
+	}
+
+	@Override
+	public boolean isValid() {
+		try {
+			long now = Instant.now().getEpochSecond();
+			long timestampTolerance = DecentConfig.TIMESTAMP_TOLERANCE;
+			boolean valid = (type.equals("getData"));
+			valid &= timestamp >= now-timestampTolerance && timestamp <= now+timestampTolerance;
+			valid &= ids.size() >= 1 && ids.size() <= InventoryMessage.MAX_IDS;
+			return valid;
+		}
+		catch(Exception e) {
+			return false;
+		}
+	}
+	/**
+	 * Returns the requested message IDs.
+	 * 
+	 * @return A list of Base 64 message IDs
+	 */
+	public List<String> getIds() {
+		return ids;
+	}
+
+}
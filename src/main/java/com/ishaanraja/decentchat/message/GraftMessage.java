@@ -0,0 +1,47 @@
+package com.ishaanraja.decentchat.message;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.ishaanraja.decentchat.config.DecentConfig;
+
+/**
+ * Requests the chat messages with the given IDs, which the sender was announced but did not receive in full 
+ * in time, and tells the receiver to push new chat messages to the sender from now on.
+ * 
+ * @see com.ishaanraja.decentchat.p2p.BroadcastTree
+ */
+public class GraftMessage extends Message {
+	
+	private List<String> ids;
+	
+	public GraftMessage(List<String> ids) {
+		super("graft");
+		this.ids = new ArrayList<String>(ids);
+	}
+
+	@Override
+	public boolean isValid() {
+		try {
+			long now = Instant.now().getEpochSecond();
+			long timestampTolerance = DecentConfig.TIMESTAMP_TOLERANCE;
+			boolean valid = (type.equals("graft"));
+			valid &= timestamp >= now-timestampTolerance && timestamp <= now+timestampTolerance;
+			valid &= ids.size() >= 1 && ids.size() <= InventoryMessage.MAX_IDS;
+			return valid;
+		}
+		catch(Exception e) {
+			return false;
+		}
+	}
+	/**
+	 * Returns the requested message IDs.
+	 * 
+	 * @return A list of Base 64 message IDs
+	 */
+	public List<String> getIds() {
+		return ids;
+	}
+
+}
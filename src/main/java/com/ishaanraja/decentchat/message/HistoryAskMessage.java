@@ -12,6 +12,11 @@ public class HistoryAskMessage extends Message {
 		super("historyAsk");
 		numMessages = DecentConfig.MESSAGE_HISTORY_LENGTH;
 	}
+	
+	HistoryAskMessage(int numMessages) {
+		super("historyAsk");
+		this.numMessages = numMessages;
+	}
 
 	@Override
 	public boolean isValid() {
@@ -0,0 +1,86 @@
+package com.ishaanraja.decentchat.message;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+
+import com.ishaanraja.decentchat.config.DecentConfig;
+
+/**
+ * Announces the IDs of chat messages the sender has, so that the receiver can fetch only the ones 
+ * it is missing with a GetDataMessage.
+ * 
+ * A message ID is the Base 64 encoding of the last ID_LENGTH bytes of the chat message's signature, the same
+ * bytes that the SignatureStore uses to recognize duplicates.
+ */
+public class InventoryMessage extends Message {
+	
+	/**
+	 * The first DecentChat version that understands inventory and getData messages.
+	 */
+	public static final String MINIMUM_VERSION = "1.2";
+	public static final int ID_LENGTH = 16;
+	public static final int MAX_IDS = 1000;
+	
+	private List<String> ids;
+	
+	public InventoryMessage(List<String> ids) {
+		super("inv");
+		this.ids = new ArrayList<String>(ids);
+	}
+
+	@Override
+	public boolean isValid() {
+		try {
+			long now = Instant.now().getEpochSecond();
+			long timestampTolerance = DecentConfig.TIMESTAMP_TOLERANCE;
+			boolean valid = (type.equals("inv"));
+			valid &= timestamp >= now-timestampTolerance && timestamp <= now+timestampTolerance;
+			valid &= ids.size() >= 1 && ids.size() <= MAX_IDS;
+			return valid;
+		}
+		catch(Exception e) {
+			return false;
+		}
+	}
+	/**
+	 * Returns the announced message IDs.
+	 * 
+	 * @return A list of Base 64 message IDs
+	 */
+	public List<String> getIds() {
+		return ids;
+	}
+	/**
+	 * Returns the message ID of a chat message.
+	 * 
+	 * @param signature The raw bytes of the chat message's signature
+	 * @return The Base 64 message ID
+	 */
+	public static String getId(byte[] signature) {
+		int start = Math.max(signature.length-ID_LENGTH, 0);
+		return Base64.getEncoder().encodeToString(Arrays.copyOfRange(signature, start, signature.length));
+	}
+	/**
+	 * Returns the raw bytes of a message ID. These can be used anywhere the raw signature of the chat 
+	 * message is used to recognize it.
+	 * 
+	 * @param id The Base 64 message ID
+	 * @return The raw ID or null if the ID is invalid
+	 */
+	public static byte[] decodeId(String id) {
+		if(id == null) {
+			return null;
+		}
+		try {
+			byte[] raw = Base64.getDecoder().decode(id);
+			return raw.length == ID_LENGTH ? raw : null;
+		}
+		catch(IllegalArgumentException e) {
+			return null;
+		}
+	}
+
+}
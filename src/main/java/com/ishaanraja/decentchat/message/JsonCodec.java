@@ -0,0 +1,181 @@
+package com.ishaanraja.decentchat.message;
+
+import java.lang.reflect.Type;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonDeserializationContext;
+import com.google.gson.JsonDeserializer;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+
+/**
+ * Encodes and decodes messages as JSON, DecentChat's original wire format.
+ *
+ * A single Gson instance is shared by the whole client (Gson is thread safe). Decoding parses the text exactly
+ * once; the type member is read from the parsed tree, which is then bound to the Message subclass registered for
+ * that type.
+ */
+public final class JsonCodec {
+
+	/**
+	 * The charset JSON lines are encoded in on the wire.
+	 */
+	public static final Charset CHARSET = Charset.defaultCharset();
+
+	private static final byte[] TYPE_MEMBER = "\"type\":\"".getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] CHAT_TYPE = "\"type\":\"chat\"".getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] SIGNATURE_MEMBER = "\"signature\":\"".getBytes(StandardCharsets.US_ASCII);
+
+	private static final Map<String, Class<? extends Message>> messageTypes;
+	private static final Gson gson;
+
+	private JsonCodec() {}
+
+	static {
+		messageTypes = new ConcurrentHashMap<String, Class<? extends Message>>();
+		register("chat", ChatMessage.class);
+		register("peerAsk", PeerAskMessage.class);
+		register("peers", PeersMessage.class);
+		register("ping", PingMessage.class);
+		register("pong", PongMessage.class);
+		register("historyAsk", HistoryAskMessage.class);
+		register("history", HistoryMessage.class);
+		register("inv", InventoryMessage.class);
+		register("getData", GetDataMessage.class);
+		register("prune", PruneMessage.class);
+		register("graft", GraftMessage.class);
+		gson = new GsonBuilder().registerTypeAdapter(Message.class, new MessageDeserializer()).create();
+	}
+
+	private static class MessageDeserializer implements JsonDeserializer<Message> {
+
+		@Override
+		public Message deserialize(JsonElement json, Type typeOfT, JsonDeserializationContext context) throws JsonParseException {
+			JsonObject obj = json.getAsJsonObject();
+			//Timestamp member required for all messages
+			if(!obj.has("type") || !obj.has("timestamp")) {
+				return null;
+			}
+			Class<? extends Message> messageClass = messageTypes.get(obj.get("type").getAsString());
+			if(messageClass == null) {
+				return null;
+			}
+			return context.deserialize(obj, messageClass);
+		}
+
+	}
+
+	/**
+	 * Registers the class that messages of a given type are decoded into.
+	 *
+	 * @param type The value of the message's type member
+	 * @param messageClass The Message subclass to decode into
+	 */
+	public static void register(String type, Class<? extends Message> messageClass) {
+		messageTypes.put(type, messageClass);
+	}
+	/**
+	 * Returns the class registered for a message type.
+	 *
+	 * @param type The value of the message's type member
+	 * @return The registered Message subclass or null if the type is unknown
+	 */
+	public static Class<? extends Message> getMessageClass(String type) {
+		return messageTypes.get(type);
+	}
+	/**
+	 * Returns the JSON representation of a message.
+	 *
+	 * @param m The message to encode
+	 * @return A String of the JSON representation of the message
+	 */
+	public static String encode(Message m) {
+		return gson.toJson(m);
+	}
+	/**
+	 * Returns the JSON representation of a message as a newline terminated line, ready to be sent.
+	 *
+	 * @param m The message to encode
+	 * @return The bytes of the JSON line
+	 */
+	public static byte[] encodeLine(Message m) {
+		return (gson.toJson(m)+"\n").getBytes(CHARSET);
+	}
+	/**
+	 * Decodes a JSON message into its registered Message subclass.
+	 *
+	 * @param json The JSON representation of the message
+	 * @return The decoded message or null if it has no timestamp or an unknown type
+	 * @throws JsonParseException If the text is not a valid JSON object
+	 */
+	public static Message decode(String json) {
+		return gson.fromJson(json, Message.class);
+	}
+	/**
+	 * Finds the signature of a chat message line without parsing it, so that duplicates can be dropped cheaply.
+	 * 
+	 * Only lines with exactly one type member, which is "chat", and exactly one signature member are recognized.
+	 * Member names cannot appear unescaped inside string values, so this never mistakes a history message (which 
+	 * holds several type members) or a message's text for a chat message. Anything else, such as JSON with whitespace 
+	 * between tokens, returns null and is simply decoded normally.
+	 *
+	 * @param line The bytes of the line
+	 * @param length The number of bytes in the line
+	 * @return The raw signature bytes or null if the line is not recognized as a chat message
+	 */
+	public static byte[] peekChatSignature(byte[] line, int length) {
+		int type = indexOf(line, length, TYPE_MEMBER, 0);
+		if(type < 0 || indexOf(line, length, TYPE_MEMBER, type+1) >= 0 || indexOf(line, length, CHAT_TYPE, type) != type) {
+			return null;
+		}
+		int signature = indexOf(line, length, SIGNATURE_MEMBER, 0);
+		if(signature < 0 || indexOf(line, length, SIGNATURE_MEMBER, signature+1) >= 0) {
+			return null;
+		}
+		int start = signature+SIGNATURE_MEMBER.length;
+		int end = start;
+		while(end < length && line[end] != '"') {
+			end++;
+		}
+		if(end == length) {
+			return null;
+		}
+		String value = new String(line, start, end-start, StandardCharsets.US_ASCII);
+		//Gson escapes the Base 64 padding character
+		value = value.replace("\\u003d", "=");
+		try {
+			return Base64.getDecoder().decode(value);
+		}
+		catch(IllegalArgumentException e) {
+			return null;
+		}
+	}
+	private static int indexOf(byte[] bytes, int length, byte[] pattern, int from) {
+		for(int i=from;i<=length-pattern.length;i++) {
+			int j = 0;
+			while(j < pattern.length && bytes[i+j] == pattern[j]) {
+				j++;
+			}
+			if(j == pattern.length) {
+				return i;
+			}
+		}
+		return -1;
+	}
+	/**
+	 * Returns the shared Gson instance, for code that stores messages as JSON.
+	 *
+	 * @return The shared Gson instance
+	 */
+	public static Gson getGson() {
+		return gson;
+	}
+
+}
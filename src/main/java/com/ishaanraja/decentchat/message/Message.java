@@ -3,7 +3,6 @@ package com.ishaanraja.decentchat.message;
 import java.net.InetAddress;
 import java.time.Instant;
 
-import com.google.gson.Gson;
 import com.ishaanraja.decentchat.config.DecentConfig;
 
 public abstract class Message {
@@ -37,13 +36,39 @@ public abstract class Message {
 		return type;
 	}
 	/**
-	 * Currently unused as of now, but returns the sender of this message's DecentChat version.
+	 * Returns the sender of this message's DecentChat version, which tells which optional features 
+	 * (such as binary frames) the sender supports.
 	 * 
 	 * @return The sender's DecentChat version
 	 */
 	public String getVersion() {
 		return version;
 	}
+	/**
+	 * Compares two DecentChat versions of the form major.minor, number by number.
+	 * 
+	 * @param a The first version
+	 * @param b The second version
+	 * @return A negative number, zero or a positive number if a is older than, equal to or newer than b. Missing or 
+	 * malformed versions are treated as older than any other version.
+	 */
+	public static int compareVersions(String a, String b) {
+		try {
+			String[] aParts = a.split("\\.");
+			String[] bParts = b.split("\\.");
+			for(int i=0;i<Math.max(aParts.length, bParts.length);i++) {
+				int aPart = i < aParts.length ? Integer.parseInt(aParts[i]) : 0;
+				int bPart = i < bParts.length ? Integer.parseInt(bParts[i]) : 0;
+				if(aPart != bPart) {
+					return Integer.compare(aPart, bPart);
+				}
+			}
+			return 0;
+		}
+		catch(Exception e) {
+			return -1;
+		}
+	}
 	/**
 	 * POSIX standard epoch timestamp representing the number of seconds from January 1, 1970 UTC.
 	 * 
@@ -58,7 +83,7 @@ public abstract class Message {
 	 * @return A String of the JSON representation of this message
 	 */
 	public String toJson() {
-		return new Gson().toJson(this);
+		return JsonCodec.encode(this);
 	}
 
 }
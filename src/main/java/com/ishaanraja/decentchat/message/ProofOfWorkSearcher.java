@@ -0,0 +1,111 @@
+package com.ishaanraja.decentchat.message;
+
+import java.security.PrivateKey;
+import java.security.Signature;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.ishaanraja.decentchat.config.DecentConfig;
+import com.ishaanraja.decentchat.config.DecentLogger;
+
+/**
+ * Searches for a nonce that makes a ChatMessage signature meet the current difficulty,
+ * splitting the nonce space across a pool of worker threads.
+ *
+ * Since SHA256withRSA signatures are deterministic, any nonce that meets the difficulty is
+ * equally valid, so the search stops as soon as any worker finds one. With n workers, worker i
+ * tests nonces i+1, i+1+n, i+1+2n and so on.
+ *
+ * The number of workers is set by proofOfWorkThreads in the config.
+ */
+public final class ProofOfWorkSearcher {
+
+	private static ExecutorService pool;
+	private static int threads;
+	private static volatile double lastHashRate;
+
+	private ProofOfWorkSearcher() {}
+
+	/**
+	 * Finds a nonce such that the signature of text+nonce meets the current difficulty.
+	 *
+	 * @param privateKey The key to sign with
+	 * @param text The digest of the message (type+message+timestamp)
+	 * @return The nonce that can be added to the message so that the message meets the difficulty, or 0 if none was found
+	 * @throws Exception If the signature could not be calculated
+	 */
+	public static int search(PrivateKey privateKey, String text) throws Exception {
+		ExecutorService workers = getPool();
+		AtomicInteger found = new AtomicInteger(0);
+		LongAdder signatures = new LongAdder();
+		long startTime = System.nanoTime();
+		List<Future<Void>> futures = new ArrayList<Future<Void>>();
+		for(int i=0;i<threads;i++) {
+			int firstNonce = i+1;
+			futures.add(workers.submit(() -> {
+				searchStride(privateKey, text, firstNonce, threads, found, signatures);
+				return null;
+			}));
+		}
+		try {
+			for(Future<Void> f: futures) {
+				f.get();
+			}
+		}
+		catch(ExecutionException e) {
+			found.set(-1);
+			if(e.getCause() instanceof Exception) {
+				throw (Exception) e.getCause();
+			}
+			throw e;
+		}
+		double seconds = (System.nanoTime()-startTime)/1e9;
+		lastHashRate = seconds > 0 ? signatures.sum()/seconds : 0;
+		DecentLogger.write(DecentLogger.Level.DEBUG, String.format("Proof of work took %d signatures in %.2f seconds (%.1f signatures/sec on %d threads)", signatures.sum(), seconds, lastHashRate, threads));
+		return Math.max(found.get(), 0);
+	}
+	/**
+	 * Tests every stride-th nonce starting at firstNonce until one meets the difficulty or
+	 * another worker has found one.
+	 */
+	private static void searchStride(PrivateKey privateKey, String text, int firstNonce, int stride, AtomicInteger found, LongAdder signatures) throws Exception {
+		Signature privateSignature = Signature.getInstance("SHA256withRSA");
+		privateSignature.initSign(privateKey);
+		for(long testNonce = firstNonce; testNonce < Integer.MAX_VALUE && found.get() == 0; testNonce+=stride) {
+			privateSignature.update((text+testNonce).getBytes("UTF-8"));
+			byte[] sigBytes = privateSignature.sign();
+			signatures.increment();
+			if(ChatMessage.isProofOfWorkValid(sigBytes)) {
+				found.compareAndSet(0, (int) testNonce);
+				return;
+			}
+		}
+	}
+	private static synchronized ExecutorService getPool() {
+		if(pool == null) {
+			threads = DecentConfig.getProofOfWorkThreads();
+			pool = Executors.newFixedThreadPool(threads, r -> {
+				Thread t = new Thread(r, "ProofOfWorkSearcher");
+				//Never keep the client alive just for an unfinished message
+				t.setDaemon(true);
+				return t;
+			});
+		}
+		return pool;
+	}
+	/**
+	 * Returns the signatures per second achieved by the most recent search.
+	 *
+	 * @return signatures per second, or 0 if no message has been sent yet
+	 */
+	public static double getLastHashRate() {
+		return lastHashRate;
+	}
+
+}
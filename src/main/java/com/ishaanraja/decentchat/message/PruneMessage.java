@@ -0,0 +1,38 @@
+package com.ishaanraja.decentchat.message;
+
+import java.time.Instant;
+
+import com.ishaanraja.decentchat.config.DecentConfig;
+
+/**
+ * Tells the receiver that the sender already receives chat messages through another peer, so the receiver 
+ * should only announce new chat messages to the sender from now on instead of pushing them.
+ * 
+ * @see com.ishaanraja.decentchat.p2p.BroadcastTree
+ */
+public class PruneMessage extends Message {
+	
+	/**
+	 * The first DecentChat version that understands prune and graft messages.
+	 */
+	public static final String MINIMUM_VERSION = "1.3";
+	
+	public PruneMessage() {
+		super("prune");
+	}
+
+	@Override
+	public boolean isValid() {
+		try {
+			long now = Instant.now().getEpochSecond();
+			long timestampTolerance = DecentConfig.TIMESTAMP_TOLERANCE;
+			boolean valid = (type.equals("prune"));
+			valid &= timestamp >= now-timestampTolerance && timestamp <= now+timestampTolerance;
+			return valid;
+		}
+		catch(Exception e) {
+			return false;
+		}
+	}
+
+}
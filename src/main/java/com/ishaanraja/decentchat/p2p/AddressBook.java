@@ -0,0 +1,294 @@
+package com.ishaanraja.decentchat.p2p;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.reflect.Type;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+import com.ishaanraja.decentchat.config.DecentLogger;
+import com.ishaanraja.decentchat.io.PeerStats;
+
+/**
+ * Remembers every address the client has peered with, and how reliable each one has been: when it was last
+ * seen, how often connecting to it succeeded or failed, its round trip time and how long it stayed connected.
+ * On startup, the best scored addresses are tried first.
+ *
+ * Changes are written to disk at most once every FLUSH_DELAY_MILLIS, by writing a temporary file and renaming
+ * it over the old one, so that the file is never left half written.
+ */
+class AddressBook {
+
+	private static final int MAX_ADDRESSES = 1000;
+	private static final long FLUSH_DELAY_MILLIS = 10 * 1000;
+	private static final long DAY_MILLIS = 24 * 60 * 60 * 1000;
+
+	/**
+	 * What is known about one address. Serialized by Gson.
+	 */
+	private static class Entry {
+
+		private String address;
+		private long lastSeen;
+		private int successes;
+		private int failures;
+		private double rttMillis;
+		private long uptimeMillis;
+		//When the current connection was made, or 0 if not connected
+		private transient long connectedSince;
+
+		private Entry(String address) {
+			this.address = address;
+		}
+
+		/**
+		 * The score is the share of successful connections (counting one imagined success and failure, so
+		 * that new addresses start at one half), raised for long total uptime, lowered for high round trip
+		 * times and lowered further the longer the address has not been seen.
+		 */
+		private double getScore(long now) {
+			double reliability = (successes+1.0)/(successes+failures+2.0);
+			double uptimeHours = (getUptimeMillis(now))/3600000.0;
+			double daysUnseen = lastSeen == 0 ? 30 : Math.max(0, now-lastSeen)/(double) DAY_MILLIS;
+			return reliability * (1+Math.log1p(uptimeHours)) / (1+rttMillis/1000) / (1+daysUnseen);
+		}
+		private long getUptimeMillis(long now) {
+			return connectedSince == 0 ? uptimeMillis : uptimeMillis+(now-connectedSince);
+		}
+
+	}
+
+	private final File file;
+	private final Gson gson;
+	//Address string -> entry, guarded by this
+	private final Map<String, Entry> entries;
+	private final ScheduledExecutorService timer;
+	//Held while writing, so that a scheduled flush and close() do not share the temporary file
+	private final Object writeLock;
+	//Whether a flush is scheduled, guarded by this
+	private boolean flushScheduled;
+
+	/**
+	 * Loads the address book from a file, or imports the addresses of an old plain text peers file if the
+	 * address book does not exist yet.
+	 *
+	 * @param file The file the address book is kept in
+	 * @param legacyFile An old peers file with one address per line
+	 */
+	AddressBook(File file, File legacyFile) {
+		this.file = file;
+		this.gson = new GsonBuilder().setPrettyPrinting().create();
+		this.entries = new HashMap<String, Entry>();
+		this.writeLock = new Object();
+		this.timer = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "AddressBook");
+			t.setDaemon(true);
+			return t;
+		});
+		if(file.exists()) {
+			load();
+		}
+		else if(legacyFile.exists()) {
+			importLegacy(legacyFile);
+		}
+	}
+
+	private void load() {
+		Type listType = new TypeToken<List<Entry>>() {}.getType();
+		try(Reader reader = new FileReader(file)) {
+			List<Entry> loaded = gson.fromJson(reader, listType);
+			if(loaded != null) {
+				for(Entry e: loaded) {
+					if(e != null && e.address != null) {
+						entries.put(e.address, e);
+					}
+				}
+			}
+		}
+		catch(IOException | JsonParseException e) {
+			DecentLogger.write(DecentLogger.Level.WARN, "Unable to read "+file.getName()+" due to "+e.getMessage());
+		}
+	}
+	private void importLegacy(File legacyFile) {
+		try(BufferedReader reader = new BufferedReader(new FileReader(legacyFile))) {
+			String line = reader.readLine();
+			while(line != null) {
+				line = line.trim();
+				if(!line.isEmpty() && entries.size() < MAX_ADDRESSES) {
+					entries.put(line, new Entry(line));
+				}
+				line = reader.readLine();
+			}
+			DecentLogger.write("Imported "+entries.size()+" addresses from "+legacyFile.getName());
+			scheduleFlush();
+		}
+		catch(IOException e) {
+			DecentLogger.write(DecentLogger.Level.WARN, "Unable to read "+legacyFile.getName()+" due to "+e.getMessage());
+		}
+	}
+	/**
+	 * Returns every known address, best scored first.
+	 *
+	 * @return The addresses to try when bootstrapping
+	 */
+	List<InetAddress> getBest() {
+		List<Entry> sorted;
+		long now = System.currentTimeMillis();
+		synchronized(this) {
+			sorted = new ArrayList<Entry>(entries.values());
+			Collections.sort(sorted, Comparator.comparingDouble((Entry e) -> e.getScore(now)).reversed());
+		}
+		List<InetAddress> best = new ArrayList<InetAddress>(sorted.size());
+		for(Entry e: sorted) {
+			try {
+				best.add(InetAddress.getByName(e.address));
+			}
+			catch(UnknownHostException ex) {
+				DecentLogger.write(DecentLogger.Level.WARN, String.format("Invalid host address \"%s\" in file %s", e.address, file.getName()));
+			}
+		}
+		return best;
+	}
+	/**
+	 * Records a successful connection to an address.
+	 *
+	 * @param address The address that became a peer
+	 */
+	synchronized void onConnected(InetAddress address) {
+		Entry e = getOrCreate(address.getHostAddress());
+		long now = System.currentTimeMillis();
+		e.successes++;
+		e.lastSeen = now;
+		e.connectedSince = now;
+		scheduleFlush();
+	}
+	/**
+	 * Records the end of a connection, along with the round trip time measured during it.
+	 *
+	 * @param address The address of the peer
+	 * @param stats The statistics of the connection
+	 */
+	synchronized void onDisconnected(InetAddress address, PeerStats stats) {
+		Entry e = entries.get(address.getHostAddress());
+		if(e == null) {
+			return;
+		}
+		long now = System.currentTimeMillis();
+		if(e.connectedSince != 0) {
+			e.uptimeMillis += now-e.connectedSince;
+			e.connectedSince = 0;
+		}
+		e.lastSeen = now;
+		if(stats.getRoundTripTime().getSamples() > 0) {
+			e.rttMillis = stats.getRoundTripTime().getSmoothedMillis();
+		}
+		scheduleFlush();
+	}
+	/**
+	 * Records a failed attempt to reach an address. Addresses that were never connected to are not added.
+	 *
+	 * @param address The address that could not be reached
+	 */
+	synchronized void onUnreachable(InetAddress address) {
+		Entry e = entries.get(address.getHostAddress());
+		if(e != null) {
+			e.failures++;
+			scheduleFlush();
+		}
+	}
+	private Entry getOrCreate(String address) {
+		Entry e = entries.get(address);
+		if(e == null) {
+			if(entries.size() >= MAX_ADDRESSES) {
+				evictWorst();
+			}
+			e = new Entry(address);
+			entries.put(address, e);
+		}
+		return e;
+	}
+	private void evictWorst() {
+		long now = System.currentTimeMillis();
+		Entry worst = null;
+		for(Entry e: entries.values()) {
+			if(e.connectedSince == 0 && (worst == null || e.getScore(now) < worst.getScore(now))) {
+				worst = e;
+			}
+		}
+		if(worst != null) {
+			entries.remove(worst.address);
+		}
+	}
+	private void scheduleFlush() {
+		if(!flushScheduled) {
+			flushScheduled = true;
+			timer.schedule(this::flush, FLUSH_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+		}
+	}
+	/**
+	 * Writes the address book to a temporary file and renames it over the address book file.
+	 */
+	void flush() {
+		List<Entry> copy = new ArrayList<Entry>();
+		long now = System.currentTimeMillis();
+		synchronized(this) {
+			flushScheduled = false;
+			for(Entry e: entries.values()) {
+				//Write a copy that includes the uptime of the current connection
+				Entry c = new Entry(e.address);
+				c.lastSeen = e.connectedSince != 0 ? now : e.lastSeen;
+				c.successes = e.successes;
+				c.failures = e.failures;
+				c.rttMillis = e.rttMillis;
+				c.uptimeMillis = e.getUptimeMillis(now);
+				copy.add(c);
+			}
+		}
+		File temp = new File(file.getPath()+".tmp");
+		synchronized(writeLock) {
+			try {
+				try(Writer writer = new FileWriter(temp)) {
+					gson.toJson(copy, writer);
+				}
+				try {
+					Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+				}
+				catch(AtomicMoveNotSupportedException e) {
+					Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+				}
+			}
+			catch(IOException e) {
+				DecentLogger.write(DecentLogger.Level.WARN, "Unable to write "+file.getName()+" due to "+e.getMessage());
+			}
+		}
+	}
+	/**
+	 * Writes any pending changes and stops the flushing thread.
+	 */
+	void close() {
+		timer.shutdownNow();
+		flush();
+	}
+
+}
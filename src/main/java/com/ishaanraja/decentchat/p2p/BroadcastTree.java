@@ -0,0 +1,124 @@
+package com.ishaanraja.decentchat.p2p;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiPredicate;
+
+import com.ishaanraja.decentchat.io.DecentSocket;
+import com.ishaanraja.decentchat.message.GraftMessage;
+import com.ishaanraja.decentchat.message.PruneMessage;
+
+/**
+ * Keeps the eager/lazy state of every peer link for the epidemic broadcast tree (Plumtree) overlay.
+ *
+ * New chat messages are pushed in full to eager peers and only announced by ID to lazy peers. Every link starts
+ * out eager, so the overlay begins as a flood. Whenever a chat message arrives that was already seen, the link it
+ * arrived on is redundant: it becomes lazy and the peer is sent a PruneMessage so that it does the same. What is
+ * left of the eager links is a spanning tree, which delivers each chat message once per peer.
+ *
+ * When an announcement arrives for a message that is not received in full within GRAFT_TIMEOUT_MILLIS, the tree
+ * is broken somewhere upstream. The message is then requested from the announcing peer with a GraftMessage, which
+ * also makes that link eager again, repairing the tree.
+ *
+ * Only peers running at least PruneMessage.MINIMUM_VERSION take part; links to older peers always stay eager.
+ */
+class BroadcastTree {
+
+	/**
+	 * How long to wait for the pushed copy of an announced message before grafting the announcing peer.
+	 */
+	private static final long GRAFT_TIMEOUT_MILLIS = 1000;
+
+	private Set<DecentSocket> lazyPeers;
+	private BiPredicate<String, DecentSocket> shouldRequest;
+	private ScheduledExecutorService timer;
+
+	/**
+	 * @param shouldRequest Tests whether a message ID announced by a peer is still missing and not already 
+	 * requested, marking it as requested from that peer if so
+	 */
+	BroadcastTree(BiPredicate<String, DecentSocket> shouldRequest) {
+		this.lazyPeers = Collections.newSetFromMap(new ConcurrentHashMap<DecentSocket, Boolean>());
+		this.shouldRequest = shouldRequest;
+		this.timer = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "BroadcastTree");
+			t.setDaemon(true);
+			return t;
+		});
+	}
+	/**
+	 * Returns whether new chat messages should only be announced to a peer.
+	 *
+	 * @param socket The peer
+	 * @return true if the link is lazy, false if messages should be pushed in full
+	 */
+	boolean isLazy(DecentSocket socket) {
+		return lazyPeers.contains(socket);
+	}
+	/**
+	 * Called when a chat message that was already seen arrives from a peer. Prunes the link to that peer.
+	 *
+	 * @param socket The peer the duplicate came from
+	 */
+	void onDuplicate(DecentSocket socket) {
+		if(socket.supportsVersion(PruneMessage.MINIMUM_VERSION) && lazyPeers.add(socket)) {
+			socket.send(new PruneMessage());
+		}
+	}
+	/**
+	 * Called when a peer prunes its link to this client.
+	 *
+	 * @param socket The peer that sent the PruneMessage
+	 */
+	void onPrune(DecentSocket socket) {
+		lazyPeers.add(socket);
+	}
+	/**
+	 * Called when a peer grafts its link to this client, or when the first copy of a chat message that is 
+	 * verified and accepted came from it.
+	 *
+	 * @param socket The peer
+	 */
+	void onEager(DecentSocket socket) {
+		lazyPeers.remove(socket);
+	}
+	/**
+	 * Called when a peer announces messages that have not been seen. If they are still missing after
+	 * GRAFT_TIMEOUT_MILLIS, they are requested from that peer with a GraftMessage.
+	 *
+	 * @param ids The IDs of the missing messages
+	 * @param socket The peer that announced them
+	 */
+	void onAnnounced(List<String> ids, DecentSocket socket) {
+		timer.schedule(() -> {
+			ArrayList<String> missing = new ArrayList<String>();
+			for(String id: ids) {
+				if(shouldRequest.test(id, socket)) {
+					missing.add(id);
+				}
+			}
+			if(!missing.isEmpty() && socket.isOnline()) {
+				lazyPeers.remove(socket);
+				socket.send(new GraftMessage(missing));
+			}
+		}, GRAFT_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+	}
+	/**
+	 * Forgets a peer that was removed.
+	 *
+	 * @param socket The removed peer
+	 */
+	void remove(DecentSocket socket) {
+		lazyPeers.remove(socket);
+	}
+	void stop() {
+		timer.shutdownNow();
+	}
+
+}
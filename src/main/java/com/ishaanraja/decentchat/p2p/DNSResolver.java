@@ -30,7 +30,7 @@ public class DNSResolver {
 			}
 		}
 		catch(Exception e) {
-			DecentLogger.write("Unable to resolve DNS seeds");
+			DecentLogger.write(DecentLogger.Level.WARN, "Unable to resolve DNS seeds");
 		}
 		return hosts;
 	}
@@ -0,0 +1,170 @@
+package com.ishaanraja.decentchat.p2p;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+import com.ishaanraja.decentchat.io.DecentSocket;
+import com.ishaanraja.decentchat.message.ChatMessage;
+
+/**
+ * Keeps the recently propagated chat messages by message ID, so that they can be served to peers that
+ * request them after an announcement, and remembers which message IDs have already been requested from
+ * a peer, so that the same message is not fetched from every peer that announces it.
+ *
+ * The other peers that announce a message while it is being requested are kept as alternates. If the message
+ * has not arrived within REQUEST_TIMEOUT_MILLIS, it is requested from the next alternate that is still online.
+ *
+ * @see com.ishaanraja.decentchat.message.InventoryMessage
+ */
+class MessageInventory {
+
+	private static final int MAX_MESSAGES = 4096;
+	private static final int MAX_REQUESTS = 4096;
+	/**
+	 * The most peers kept to request a message from, besides the one it was requested from.
+	 */
+	private static final int MAX_ALTERNATES = 4;
+	/**
+	 * How long to wait for a requested message before it is requested from another peer.
+	 */
+	private static final long REQUEST_TIMEOUT_MILLIS = 5000;
+	/**
+	 * How often timed out requests are looked for.
+	 */
+	private static final long RETRY_INTERVAL_MILLIS = 1000;
+
+	/**
+	 * An outstanding request for a message.
+	 */
+	private static class Request {
+
+		private long requestedAt;
+		private ArrayDeque<DecentSocket> alternates = new ArrayDeque<DecentSocket>();
+
+		private Request(long requestedAt) {
+			this.requestedAt = requestedAt;
+		}
+
+	}
+
+	private Map<String, ChatMessage> messages;
+	//Message ID -> outstanding request, in insertion order
+	private Map<String, Request> requests;
+	private BiConsumer<DecentSocket, List<String>> request;
+	private ScheduledExecutorService timer;
+
+	/**
+	 * @param request Requests message IDs from a peer, used to retry timed out requests with an alternate peer
+	 */
+	MessageInventory(BiConsumer<DecentSocket, List<String>> request) {
+		this.messages = new LinkedHashMap<String, ChatMessage>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, ChatMessage> eldest) {
+				return size() > MAX_MESSAGES;
+			}
+		};
+		this.requests = new LinkedHashMap<String, Request>() {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Request> eldest) {
+				return size() > MAX_REQUESTS;
+			}
+		};
+		this.request = request;
+		this.timer = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "MessageInventory");
+			t.setDaemon(true);
+			return t;
+		});
+		timer.scheduleWithFixedDelay(this::retryTimedOut, RETRY_INTERVAL_MILLIS, RETRY_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+	}
+	/**
+	 * Adds a chat message that is being propagated.
+	 *
+	 * @param id The message ID
+	 * @param m The chat message
+	 */
+	synchronized void add(String id, ChatMessage m) {
+		messages.put(id, m);
+		requests.remove(id);
+	}
+	/**
+	 * Returns a recently propagated chat message.
+	 *
+	 * @param id The message ID
+	 * @return The chat message or null if it is not (or no longer) known
+	 */
+	synchronized ChatMessage get(String id) {
+		return messages.get(id);
+	}
+	/**
+	 * Records that a message is about to be requested from a peer that announced it. If a request for it is 
+	 * already outstanding, the peer is kept as an alternate instead.
+	 *
+	 * @param id The message ID
+	 * @param announcer The peer that announced the message
+	 * @return true if the message should be requested from the announcer, false if a request for it is already outstanding
+	 */
+	synchronized boolean markRequested(String id, DecentSocket announcer) {
+		Request r = requests.get(id);
+		if(r != null) {
+			if(r.alternates.size() < MAX_ALTERNATES && !r.alternates.contains(announcer)) {
+				r.alternates.add(announcer);
+			}
+			return false;
+		}
+		requests.put(id, new Request(System.currentTimeMillis()));
+		return true;
+	}
+	/**
+	 * Requests every message whose request timed out from its next alternate peer that is still online, 
+	 * and forgets the requests that have no alternates left.
+	 */
+	private void retryTimedOut() {
+		Map<DecentSocket, List<String>> retries = new HashMap<DecentSocket, List<String>>();
+		long now = System.currentTimeMillis();
+		synchronized(this) {
+			Iterator<Map.Entry<String, Request>> itr = requests.entrySet().iterator();
+			while(itr.hasNext()) {
+				Map.Entry<String, Request> e = itr.next();
+				Request r = e.getValue();
+				if(now-r.requestedAt <= REQUEST_TIMEOUT_MILLIS) {
+					continue;
+				}
+				DecentSocket next = r.alternates.poll();
+				while(next != null && !next.isOnline()) {
+					next = r.alternates.poll();
+				}
+				if(next == null) {
+					itr.remove();
+				}
+				else {
+					r.requestedAt = now;
+					retries.computeIfAbsent(next, s -> new ArrayList<String>()).add(e.getKey());
+				}
+			}
+		}
+		for(Map.Entry<DecentSocket, List<String>> e: retries.entrySet()) {
+			request.accept(e.getKey(), e.getValue());
+		}
+	}
+	/**
+	 * Stops retrying timed out requests.
+	 */
+	void stop() {
+		timer.shutdownNow();
+	}
+
+}
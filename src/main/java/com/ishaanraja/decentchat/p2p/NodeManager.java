@@ -2,9 +2,6 @@ package com.ishaanraja.decentchat.p2p;
 
 import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.net.InetAddress;
@@ -12,15 +9,13 @@ import java.net.URL;
 import java.net.UnknownHostException;
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Queue;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.function.BiFunction;
+import java.util.function.Predicate;
 
-import com.google.gson.Gson;
-import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
 import com.ishaanraja.decentchat.client.DifficultyAdjustmentThread;
 import com.ishaanraja.decentchat.client.HistoryManager;
 import com.ishaanraja.decentchat.config.DecentConfig;
@@ -28,15 +23,24 @@ import com.ishaanraja.decentchat.config.DecentLogger;
 import com.ishaanraja.decentchat.io.DecentCallback;
 import com.ishaanraja.decentchat.io.DecentListener;
 import com.ishaanraja.decentchat.io.DecentPeerChecker;
+import com.ishaanraja.decentchat.io.DecentSelector;
 import com.ishaanraja.decentchat.io.DecentSocket;
+import com.ishaanraja.decentchat.io.DuplicateFilter;
+import com.ishaanraja.decentchat.io.PeerRegistry;
+import com.ishaanraja.decentchat.io.PeerStats;
 import com.ishaanraja.decentchat.message.ChatMessage;
+import com.ishaanraja.decentchat.message.EncodedMessage;
+import com.ishaanraja.decentchat.message.GetDataMessage;
+import com.ishaanraja.decentchat.message.GraftMessage;
 import com.ishaanraja.decentchat.message.HistoryAskMessage;
 import com.ishaanraja.decentchat.message.HistoryMessage;
+import com.ishaanraja.decentchat.message.InventoryMessage;
 import com.ishaanraja.decentchat.message.Message;
 import com.ishaanraja.decentchat.message.PeerAskMessage;
 import com.ishaanraja.decentchat.message.PeersMessage;
 import com.ishaanraja.decentchat.message.PingMessage;
 import com.ishaanraja.decentchat.message.PongMessage;
+import com.ishaanraja.decentchat.message.PruneMessage;
 
 /** 
  * The NodeManager class manages all incoming/outgoing messages from the client
@@ -51,38 +55,57 @@ public class NodeManager {
 	private class NodeManagerCallback extends DecentCallback {
 
 		@Override
-		public Message onSocketMessageReceived(String message, DecentSocket origin) {
+		public Message onSocketMessageReceived(Message message, DecentSocket origin) {
 			return onMessageReceived(message, origin);
 		}
 
 		@Override
-		public synchronized void removeSocketPeer(InetAddress address) {
-			removePeer(address);
+		public void removeSocketPeer(DecentSocket socket) {
+			removePeer(socket);
 		}
 
 		@Override
-		public synchronized void addSocketPeer(DecentSocket socket) {
-			addPeer(socket);
+		public boolean addSocketPeer(DecentSocket socket) {
+			return addPeer(socket);
 		}
 
 		@Override
-		public synchronized boolean canAddSocketPeer(InetAddress address) {
+		public boolean canAddSocketPeer(InetAddress address) {
 			return canAddPeer(address);
 		}
 		
+		@Override
+		public boolean isSeenSignature(byte[] signature) {
+			return seenSignature.test(signature);
+		}
+		
+		@Override
+		public void onDuplicateReceived(DecentSocket origin) {
+			if(broadcastTree != null) {
+				broadcastTree.onDuplicate(origin);
+			}
+		}
+		
+		@Override
+		public void onPeerUnreachable(InetAddress address) {
+			addressBook.onUnreachable(address);
+		}
+		
 	}
 	
-	private File peersFile;
+	private AddressBook addressBook;
 	
-	private Map<InetAddress, DecentSocket> peers;
+	private PeerRegistry peers;
 	
 	private DecentListener listener;
 	private DecentPeerChecker checker;
+	private DecentSelector selector;
 	private DecentCallback callback;
 	
 	private BiFunction<ChatMessage, DecentSocket, Void> chatMessageCallback;
-	
-	private int maximumConnections;
+	private Predicate<byte[]> seenSignature;
+	//Message type -> handler that returns the response to send back (or null)
+	private Map<String, BiFunction<Message, DecentSocket, Message>> handlers;
 	
 	private InetAddress externalIP;
 	private InetAddress internalIP;
@@ -94,31 +117,60 @@ public class NodeManager {
 	 * the messages contained in this queue are sent out.
 	 */
 	private Queue<Message> noPeersMessageQueue;
+	private MessageInventory inventory;
+	/**
+	 * The eager/lazy state of every peer link, or null if chat messages are flooded to every peer.
+	 */
+	private BroadcastTree broadcastTree;
 	
 	/**
 	 * Creates a new NodeManager instance. 
 	 * 
 	 * @param chatMessageCallback The Function to call when a chat message is received
+	 * @param seenSignature Tests whether a chat message with a given raw signature has already been seen
 	 * @param chatClient The DecentChatClient instance that this NodeManager will be managing.
 	 * @param difficultyAdjuster The DecentChatClient's DifficultyAdjustmentThread
 	 */
 	
-	public NodeManager(BiFunction<ChatMessage, DecentSocket, Void> chatMessageCallback, DifficultyAdjustmentThread difficultyAdjuster, HistoryManager historyManager) {
-		this.peers = new HashMap<InetAddress, DecentSocket>();
-		this.peersFile = new File("peers.txt");
+	public NodeManager(BiFunction<ChatMessage, DecentSocket, Void> chatMessageCallback, Predicate<byte[]> seenSignature, DifficultyAdjustmentThread difficultyAdjuster, HistoryManager historyManager) {
+		this.peers = new PeerRegistry(DecentConfig.getMaximumConnections());
+		this.addressBook = new AddressBook(new File("peers.json"), new File("peers.txt"));
 		this.callback = new NodeManagerCallback();
 		this.chatMessageCallback = chatMessageCallback;
-		this.maximumConnections = DecentConfig.getMaximumConnections();
-		this.checker = new DecentPeerChecker(callback, peers);
-		this.listener = new DecentListener(callback, peers);
+		this.seenSignature = seenSignature;
+		this.handlers = new HashMap<String, BiFunction<Message, DecentSocket, Message>>();
+		registerHandlers();
+		this.selector = createSelector();
+		this.checker = new DecentPeerChecker(callback, peers, selector);
+		this.listener = new DecentListener(callback, peers, selector);
 		this.difficultyAdjuster = difficultyAdjuster;
 		this.historyManager = historyManager;
 		this.noPeersMessageQueue = new LinkedBlockingQueue<Message>();
+		this.inventory = new MessageInventory(this::requestIds);
+		if(DecentConfig.getBroadcastTree()) {
+			this.broadcastTree = new BroadcastTree(this::shouldRequest);
+		}
 		this.online = true;
 		findInternalExternalIP();
 		findPeers();
 	}
 	
+	/**
+	 * Creates the DecentSelector event loop if the selector transport is enabled in the config.
+	 * 
+	 * @return A running DecentSelector or null if every peer should get its own thread
+	 */
+	private static DecentSelector createSelector() {
+		if(DecentConfig.getSelectorTransport()) {
+			try {
+				return new DecentSelector();
+			}
+			catch(IOException e) {
+				DecentLogger.write(DecentLogger.Level.WARN, "Unable to open selector, falling back to a thread per peer");
+			}
+		}
+		return null;
+	}
 	private void findPeers() {
 		readPeers();
 		//If we've found no peers at all, last resort find peer
@@ -129,28 +181,26 @@ public class NodeManager {
 	/** 
 	 * Adds a DecentSocket to the peers list. 
 	 * 
-	 * Before it does that, it checks that the peers list isn't full and that the socket address is valid by calling
-	 * the canAddPeer().
+	 * The peers list checks that it isn't full and that the socket address is valid by calling isEligiblePeer(), 
+	 * and adds the socket in the same step, so peers connecting at the same time cannot overfill it.
 	 * 
-	 * If the peer is the first peer on the list, any pending messages in the message queue are flushed.
+	 * Any messages sent while the client had no peers are then flushed.
 	 * 
 	 * @param newPeer The DecentSocket to add to the peers list
+	 * @return true if the socket was added
 	 */
-	private void addPeer(DecentSocket socket) {
+	private boolean addPeer(DecentSocket socket) {
 		InetAddress address = socket.getInetAddress();
-		if(canAddPeer(address)) {
-			peers.put(address, socket);
-			//If this is the client's first peer, flush the message queue
-			if(peers.size() == 1) {
-				flushMessageQueue();
-				DecentLogger.write("Flushed message queue");
-			}
-			DecentLogger.write("Added new peer: "+address.getHostAddress());
-			writePeers();
-			if(peers.size() < maximumConnections) {
-				socket.send((new PeerAskMessage()));
-			}
+		if(!peers.admit(socket, this::isEligiblePeer)) {
+			return false;
 		}
+		flushMessageQueue();
+		DecentLogger.write(DecentLogger.Level.DEBUG, "Added new peer: "+address.getHostAddress());
+		addressBook.onConnected(address);
+		if(!peers.isFull()) {
+			socket.send((new PeerAskMessage()));
+		}
+		return true;
 	}
 	/**
 	 * Does the following checks on a given InetAddress:
@@ -167,65 +217,72 @@ public class NodeManager {
 	 * @return true/false if this InetAddress can be added as a peer
 	 */
 	private boolean canAddPeer(InetAddress candidate) {
-		return peers.size() < maximumConnections && !peers.containsKey(candidate) && !candidate.equals(externalIP) && !candidate.equals(internalIP) && !candidate.isLoopbackAddress();
+		return !peers.isFull() && !peers.contains(candidate) && isEligiblePeer(candidate);
+	}
+	/**
+	 * @param candidate The InetAddress to check
+	 * @return true if the candidate is not one of the client's own addresses
+	 */
+	private boolean isEligiblePeer(InetAddress candidate) {
+		return !candidate.equals(externalIP) && !candidate.equals(internalIP) && !candidate.isLoopbackAddress();
 	}
 	/**
-	 * Removes a given peer from the peer list. Does nothing if the peer is not in the list.
+	 * Removes a given peer from the peer list. Does nothing if the socket is not in the list.
 	 * 
-	 * @param peerToRemove The InetAddress to remove from the peers list
+	 * @param peerToRemove The DecentSocket to remove from the peers list
 	 */
-	private void removePeer(InetAddress peerToRemove) {
-		if(peers.containsKey(peerToRemove)) {
-			peers.remove(peerToRemove);
-			//If this NodeManager is shutting down (online == false), no need to remove peers from peers.txt
-			if(online) {
-				writePeers();
+	private void removePeer(DecentSocket peerToRemove) {
+		if(peers.remove(peerToRemove)) {
+			if(broadcastTree != null) {
+				broadcastTree.remove(peerToRemove);
 			}
+			addressBook.onDisconnected(peerToRemove.getInetAddress(), peerToRemove.getStats());
 		}
 	}
 	/**
-	 * Callback method for when messages are received.
-	 * 
-	 * Verifies the message has a timestamp, checks the message type, and deserializes it 
-	 * into its respective object. 
+	 * Registers the handler for every message type a peer may send.
+	 */
+	private void registerHandlers() {
+		addHandler("chat", ChatMessage.class, this::onChatMessageReceived);
+		addHandler("peerAsk", PeerAskMessage.class, this::onPeerAskMessageReceived);
+		addHandler("peers", PeersMessage.class, this::onPeersMessageReceived);
+		addHandler("ping", PingMessage.class, this::onPingMessageReceived);
+		addHandler("pong", PongMessage.class, this::onPongMessageReceived);
+		addHandler("historyAsk", HistoryAskMessage.class, this::onHistoryAskMessageReceived);
+		addHandler("history", HistoryMessage.class, this::onHistoryMessageReceived);
+		addHandler("inv", InventoryMessage.class, this::onInventoryMessageReceived);
+		addHandler("getData", GetDataMessage.class, this::onGetDataMessageReceived);
+		addHandler("prune", PruneMessage.class, this::onPruneMessageReceived);
+		addHandler("graft", GraftMessage.class, this::onGraftMessageReceived);
+	}
+	private <T extends Message> void addHandler(String type, Class<T> messageClass, BiFunction<T, DecentSocket, Message> handler) {
+		handlers.put(type, (m, origin) -> handler.apply(messageClass.cast(m), origin));
+	}
+	/**
+	 * Callback method for when messages are received. Hands the already decoded message 
+	 * to the handler registered for its type.
 	 * 
-	 * @param message String message that was received
+	 * @param m The message that was received
 	 * @param origin The DecentSocket it was received from
 	 * @return The message to send back or null if no response necessary 
 	 */
-	private Message onMessageReceived(String message, DecentSocket origin) {
-		Gson gson = new Gson();
-		JsonObject messageObj = JsonParser.parseString(message).getAsJsonObject();
-		//Timestamp member required for all messages
-		if(messageObj.has("timestamp")) {
-			String type = messageObj.get("type").getAsString();
-			switch(type) {
-				case "chat":
-					chatMessageCallback.apply(gson.fromJson(message, ChatMessage.class), origin);
-					break;
-				case "peerAsk":
-					return onPeerAskMessageReceived(gson.fromJson(message, PeerAskMessage.class), origin);
-				case "peers":
-					return onPeersMessageReceived(gson.fromJson(message, PeersMessage.class), origin);
-				case "ping":
-					return onPingMessageReceived(gson.fromJson(message, PingMessage.class), origin);
-				case "pong":
-					return onPongMessageReceived(gson.fromJson(message, PongMessage.class), origin);
-				case "historyAsk":
-					return onHistoryAskMessageReceived(gson.fromJson(message, HistoryAskMessage.class), origin);
-				case "history":
-					return onHistoryMessageReceived(gson.fromJson(message, HistoryMessage.class), origin);
-			}
+	private Message onMessageReceived(Message m, DecentSocket origin) {
+		BiFunction<Message, DecentSocket, Message> handler = handlers.get(m.getType());
+		if(handler == null) {
+			return null;
 		}
+		return handler.apply(m, origin);
+	}
+	private Message onChatMessageReceived(ChatMessage m, DecentSocket origin) {
+		chatMessageCallback.apply(m, origin);
 		return null;
 	}
-	
 	private Message onPeersMessageReceived(PeersMessage m, DecentSocket origin) {
 		if(m.isValid()) {
 			 ArrayList<InetAddress> checkPeers = m.getPeers();
 			 int uniquePeers = 0;
 			 //Don't get more than half of maximum connections from same peer
-			 for(int i=0;i<checkPeers.size() && peers.size() < maximumConnections && uniquePeers<DecentConfig.getMaximumConnections()/2;i++) {
+			 for(int i=0;i<checkPeers.size() && !peers.isFull() && uniquePeers<DecentConfig.getMaximumConnections()/2;i++) {
 				 InetAddress p = checkPeers.get(i);
 				 if(canAddPeer(p)) {
 					 uniquePeers++;
@@ -264,6 +321,87 @@ public class NodeManager {
 		}
 		return null;
 	}
+	private Message onInventoryMessageReceived(InventoryMessage m, DecentSocket origin) {
+		if(m.isValid()) {
+			ArrayList<String> missing = new ArrayList<String>();
+			for(String id: m.getIds()) {
+				//With the broadcast tree, the pushed copy is given some time to arrive before the message is requested
+				if(broadcastTree != null ? !isSeenId(id) : shouldRequest(id, origin)) {
+					missing.add(id);
+				}
+			}
+			if(!missing.isEmpty() && broadcastTree != null) {
+				broadcastTree.onAnnounced(missing, origin);
+			}
+			else if(!missing.isEmpty()) {
+				return new GetDataMessage(missing);
+			}
+		}
+		return null;
+	}
+	private Message onGetDataMessageReceived(GetDataMessage m, DecentSocket origin) {
+		if(m.isValid()) {
+			sendFromInventory(m.getIds(), origin);
+		}
+		return null;
+	}
+	private Message onPruneMessageReceived(PruneMessage m, DecentSocket origin) {
+		if(m.isValid() && broadcastTree != null) {
+			broadcastTree.onPrune(origin);
+		}
+		return null;
+	}
+	private Message onGraftMessageReceived(GraftMessage m, DecentSocket origin) {
+		if(m.isValid()) {
+			if(broadcastTree != null) {
+				broadcastTree.onEager(origin);
+			}
+			sendFromInventory(m.getIds(), origin);
+		}
+		return null;
+	}
+	private void sendFromInventory(List<String> ids, DecentSocket origin) {
+		for(String id: ids) {
+			ChatMessage requested = inventory.get(id);
+			if(requested != null) {
+				origin.send(requested);
+			}
+		}
+	}
+	/**
+	 * Returns whether the chat message with the given ID has already been seen. Message IDs are the trailing 
+	 * bytes of the signature, so they can be checked against the seen signatures.
+	 * 
+	 * @param id The Base 64 message ID
+	 * @return true if the message was seen, or the ID is invalid
+	 */
+	private boolean isSeenId(String id) {
+		byte[] rawId = InventoryMessage.decodeId(id);
+		return rawId == null || seenSignature.test(rawId);
+	}
+	/**
+	 * Returns whether an announced chat message should be requested, marking it as requested if so. 
+	 * If it is already requested from another peer, the announcer is kept to request it from if that 
+	 * request times out.
+	 * 
+	 * @param id The Base 64 message ID
+	 * @param announcer The peer that announced the message
+	 * @return true if the message has not been seen and is not already requested from another peer
+	 */
+	private boolean shouldRequest(String id, DecentSocket announcer) {
+		return !isSeenId(id) && inventory.markRequested(id, announcer);
+	}
+	/**
+	 * Requests chat messages from a peer by ID.
+	 * 
+	 * @param socket The peer to request the messages from
+	 * @param ids The Base 64 message IDs
+	 */
+	private void requestIds(DecentSocket socket, List<String> ids) {
+		for(int i=0;i<ids.size();i+=InventoryMessage.MAX_IDS) {
+			socket.send(new GetDataMessage(new ArrayList<String>(ids.subList(i, Math.min(ids.size(), i+InventoryMessage.MAX_IDS)))));
+		}
+	}
 	/**
 	 * Uses DNS resolution to locate a peer. Only used as a last resort if unable to find peers
 	 * any other way. 
@@ -281,7 +419,7 @@ public class NodeManager {
 	 * Broadcasts an askPeers message to all currently connected peers.
 	 */
 	public void askForPeers() {
-		if(peers.size() < maximumConnections) {
+		if(!peers.isFull()) {
 			propagateToAllPeers(new PeerAskMessage());
 		}
 	}
@@ -310,16 +448,24 @@ public class NodeManager {
 	 * Flushes noPeersMessageQueue. Used once the client finds its first peer.
 	 */
 	private synchronized void flushMessageQueue() {
-		if(peers.size() > 0) {
+		if(peers.size() > 0 && !noPeersMessageQueue.isEmpty()) {
 			while(!noPeersMessageQueue.isEmpty()) {
 				propagateToAllPeers(noPeersMessageQueue.poll());
 			}
+			DecentLogger.write(DecentLogger.Level.DEBUG, "Flushed message queue");
 		}
 	}
 	/**
 	 * Propagates a message to all peers EXCEPT for those specified. 
 	 * This is primarily used to forward chat messages to other peers, exempting the peer it was received from. 
 	 * 
+	 * The message is encoded at most once per wire format, and the encoded bytes are shared by every peer.
+	 * Chat messages are not sent to peers that are already known to have them, and are only announced 
+	 * by ID to peers that use inventory gossip. With the broadcast tree enabled, chat messages are instead 
+	 * pushed to eager peers and announced to lazy peers.
+	 * 
+	 * The peers are iterated from the peers list's current snapshot, which is not copied per broadcast.
+	 * 
 	 * @param message The message to send
 	 * @param exempt The peers that will not receive this message
 	 */
@@ -328,81 +474,69 @@ public class NodeManager {
 			noPeersMessageQueue.add(message);
 			lastResortFindPeer();
 		}
-		ArrayList<DecentSocket> connections = new ArrayList<DecentSocket>(peers.values());
-		for(DecentSocket socket: connections) {
+		EncodedMessage encoded = new EncodedMessage(message);
+		byte[] signature = encoded.getChatSignature();
+		if(signature != null) {
+			inventory.add(InventoryMessage.getId(signature), (ChatMessage) message);
+		}
+		for(DecentSocket socket: peers.snapshot()) {
 			boolean isExempt = false;
 			for(int i=0;i<exempt.length && !isExempt;i++) {
 				if(socket.equals(exempt[i])) {
 					isExempt = true;
 				}
 			}
-			if(!isExempt) {
-				socket.send(message);
+			if(!isExempt && signature != null) {
+				boolean suppressed = socket.knowsSignature(signature);
+				DuplicateFilter.countBroadcastSend(suppressed);
+				isExempt = suppressed;
+			}
+			boolean announce = broadcastTree != null ? broadcastTree.isLazy(socket) : socket.isInventoryGossip();
+			if(!isExempt && signature != null && announce) {
+				socket.announce(signature);
+			}
+			else if(!isExempt) {
+				socket.send(encoded);
 			}
 		}
 	}
 	/**
-	 * Reads the peers file with each line being a different peer's IP address. 
-	 * It then adds every IP in the peers file to the DecentPingChecker's queue to check
-	 * if that peer is online or not. 
+	 * Called once a chat message received from a peer has been verified and accepted for the first time. 
+	 * The peer pushed a new message along the broadcast tree, so its link is made eager.
+	 * 
+	 * @param origin The peer the first accepted copy came from
 	 */
-	private void readPeers() {
-		if(peersFile.exists()) {
-			try {
-				BufferedReader reader = new BufferedReader(new FileReader(peersFile));
-				String line = reader.readLine();
-				int lineNumber = 1;
-				while(line != null && peers.size() < maximumConnections) {
-					try {
-						InetAddress candidate = InetAddress.getByName(line);
-						checkPeer(candidate);
-					} catch (UnknownHostException e) {
-						String logMsg = String.format("Invalid host address \"%s\" in file %s at line number %d", line, peersFile.getName(), lineNumber);
-						DecentLogger.write(logMsg);
-					}
-					line = reader.readLine();
-					lineNumber++;
-				}
-				reader.close();
-			}
-			catch (FileNotFoundException e1) {
-				String logMsg = String.format("Peer file %s not found", peersFile.getName());
-				DecentLogger.write(logMsg);
-			} 
-			catch (IOException e1) {
-				DecentLogger.write("Unable to read file due to "+e1.getMessage());
-			}
-		}
-		else {
-			try {
-				peersFile.createNewFile();
-			} catch (IOException e) {
-				e.printStackTrace();
-			}
+	public void onChatMessageAccepted(DecentSocket origin) {
+		if(broadcastTree != null) {
+			broadcastTree.onEager(origin);
 		}
 	}
-	/** 
-	 * Writes all peers into the peers file.
+	/**
+	 * Adds every address in the address book to the DecentPeerChecker's queue to check if that peer 
+	 * is online or not, best scored addresses first.
 	 */
-	public void writePeers() {
-		try(FileWriter filewriter = new FileWriter(peersFile)) {
-			Iterator<InetAddress> itr = peers.keySet().iterator();
-			while(itr.hasNext()) {
-				InetAddress p = itr.next();
-				filewriter.write(p.getHostAddress()+"\n");
-			}
-		}
-		catch(Exception e) {
-			DecentLogger.write("Unable to write peers to file");
+	private void readPeers() {
+		for(InetAddress candidate: addressBook.getBest()) {
+			checkPeer(candidate);
 		}
 	}
+	/**
+	 * Returns the traffic and latency statistics of a peer connection.
+	 * 
+	 * @param peer The address of the peer
+	 * @return The peer's statistics or null if it is not a current peer
+	 */
+	public PeerStats getPeerStats(InetAddress peer) {
+		DecentSocket socket = peers.get(peer);
+		return socket != null ? socket.getStats() : null;
+	}
 	/**
 	 * Returns a list of all peers currently in the peer list.
 	 * 
 	 * @return A list of all current peers
 	 */
 	public ArrayList<InetAddress> getPeers() {
-		return new ArrayList<InetAddress>(peers.keySet());
+		return peers.getAddresses();
 	}
 	/** 
 	 * Finds the internal and external IPs of the current client. This is used to ensure
@@ -412,12 +546,12 @@ public class NodeManager {
 		try {
 			externalIP = InetAddress.getByName(getExternalIP());
 		} catch (UnknownHostException e) {
-			DecentLogger.write("Unable to to resolve external IP to InetAddress (problem with ip provider?)");
+			DecentLogger.write(DecentLogger.Level.WARN, "Unable to to resolve external IP to InetAddress (problem with ip provider?)");
 		}
 		try {
 			internalIP = InetAddress.getLocalHost();
 		} catch (UnknownHostException e) {
-			DecentLogger.write("Unable to to resolve internal IP to InetAddress");
+			DecentLogger.write(DecentLogger.Level.WARN, "Unable to to resolve internal IP to InetAddress");
 		}
 	}
 	/**
@@ -432,7 +566,7 @@ public class NodeManager {
 	        String ip = in.readLine();
 	        return ip;
 	     } catch (IOException e) {
-	    	 DecentLogger.write("Unable to get external IP Address");
+	    	 DecentLogger.write(DecentLogger.Level.WARN, "Unable to get external IP Address");
 	     }
 		return null;
 	}
@@ -442,15 +576,20 @@ public class NodeManager {
 	 * of socket close.
 	 */
 	public void shutdown() {
-		//We call peers.values() and put into Array to create an unchanging copy, one that
-		//does not shrink even as the sockets remove themselves from the peers list
-		//this prevents a ConcurrentModificationException
+		//The snapshot does not shrink even as the sockets remove themselves from the peers list
 		online = false;
-		ArrayList<DecentSocket> connections = new ArrayList<DecentSocket>(peers.values());
-		for(DecentSocket socket: connections) {
+		for(DecentSocket socket: peers.snapshot()) {
 			socket.stop();
 		}
 		listener.stop();
 		checker.stop();
+		inventory.stop();
+		if(broadcastTree != null) {
+			broadcastTree.stop();
+		}
+		if(selector != null) {
+			selector.stop();
+		}
+		addressBook.close();
 	}
 }
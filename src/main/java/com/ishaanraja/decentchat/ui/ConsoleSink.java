@@ -0,0 +1,96 @@
+package com.ishaanraja.decentchat.ui;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Writes lines to the console on its own thread, so that a slow console (over ssh, or piped into a log
+ * collector) never holds up the threads that display messages.
+ *
+ * Lines are queued in a bounded queue. The writer thread takes every line queued since its last write and
+ * prints them as one block. If the console falls so far behind that the queue fills up, new lines are dropped,
+ * and the number of dropped lines is printed after the next block. The notice does not mark where the lines 
+ * were lost, since lines queued after them may already have been printed.
+ */
+final class ConsoleSink {
+
+	private static final int QUEUE_CAPACITY = 4096;
+	private static final int MAX_BATCH = 256;
+
+	private final PrintStream out;
+	private final BlockingQueue<String> queue;
+	private final AtomicLong dropped;
+	private final Thread writer;
+
+	/**
+	 * Creates a ConsoleSink and starts its writer thread.
+	 *
+	 * @param out The stream to write to
+	 */
+	ConsoleSink(PrintStream out) {
+		this.out = out;
+		this.queue = new ArrayBlockingQueue<String>(QUEUE_CAPACITY);
+		this.dropped = new AtomicLong();
+		this.writer = new Thread(this::drain, "ConsoleSink");
+		writer.setDaemon(true);
+		writer.start();
+		Runtime.getRuntime().addShutdownHook(new Thread(this::close, "ConsoleSink shutdown"));
+	}
+
+	/**
+	 * Queues a line to be written. Never blocks.
+	 *
+	 * @param line The line to write
+	 */
+	void println(String line) {
+		if(!queue.offer(line)) {
+			dropped.incrementAndGet();
+		}
+	}
+	private void drain() {
+		ArrayList<String> batch = new ArrayList<String>(MAX_BATCH);
+		try {
+			while(true) {
+				batch.add(queue.take());
+				queue.drainTo(batch, MAX_BATCH-1);
+				write(batch);
+				batch.clear();
+			}
+		}
+		catch(InterruptedException e) {
+			//Shutting down, close() writes what is left
+		}
+	}
+	private synchronized void write(ArrayList<String> batch) {
+		StringBuilder block = new StringBuilder();
+		for(String line: batch) {
+			block.append(line).append(System.lineSeparator());
+		}
+		//Lines queued once space freed up may be in this batch too, so the notice only says how many were lost, not where
+		long lost = dropped.getAndSet(0);
+		if(lost > 0) {
+			block.append("(").append(lost).append(" lines were not shown because the console could not keep up)").append(System.lineSeparator());
+		}
+		out.print(block);
+		out.flush();
+	}
+	/**
+	 * Stops the writer thread and writes every queued line. Called when the JVM shuts down.
+	 */
+	private void close() {
+		writer.interrupt();
+		try {
+			writer.join(1000);
+		}
+		catch(InterruptedException e) {
+			//Write what is left anyway
+		}
+		ArrayList<String> rest = new ArrayList<String>();
+		queue.drainTo(rest);
+		write(rest);
+	}
+
+}
@@ -13,6 +13,7 @@ import javax.swing.JFrame;
 
 import com.ishaanraja.decentchat.client.DecentChatClient;
 import com.ishaanraja.decentchat.config.DecentConfig;
+import com.ishaanraja.decentchat.config.DecentLogger;
 
 import javax.swing.JTextField;
 import javax.swing.event.ChangeEvent;
@@ -42,6 +43,13 @@ import javax.swing.JCheckBox;
 import javax.swing.SwingConstants;
 import javax.swing.UIManager;
 import javax.swing.border.EmptyBorder;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.DefaultCaret;
+import javax.swing.text.Document;
+import javax.swing.SwingUtilities;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class DecentChatGUI implements Display {
 
@@ -53,6 +61,9 @@ public class DecentChatGUI implements Display {
 	private JLabel characterCount;
 	private JLabel identifierLabel;
 	private JScrollPane chatScrollPane;
+	//Lines waiting to be appended to chatLog on the event dispatch thread
+	private Queue<String> pendingLines;
+	private AtomicBoolean updateScheduled;
 	
 	private static final Color NEUTRAL_COLOR = new Color(28,28,28);
 	private static final Color PRIMARY_COLOR = new Color(43,43,43,255);
@@ -63,6 +74,8 @@ public class DecentChatGUI implements Display {
 	 * Create the application.
 	 */
 	public DecentChatGUI() {
+		pendingLines = new ConcurrentLinkedQueue<String>();
+		updateScheduled = new AtomicBoolean();
 		initialize();
 		frame.setVisible(true);
 		client = new DecentChatClient(this);
@@ -106,6 +119,8 @@ public class DecentChatGUI implements Display {
 		chatLog = new JTextArea();
 		chatLog.setBorder(new EmptyBorder(8, 12, 12, 12));
 		chatLog.setEditable(false);
+		//Only scroll to new lines when the user is at the bottom, see appendPendingLines()
+		((DefaultCaret) chatLog.getCaret()).setUpdatePolicy(DefaultCaret.NEVER_UPDATE);
 		chatLog.setMaximumSize(new Dimension(chatScrollPane.getWidth(), chatScrollPane.getHeight()));
 		chatLog.setLineWrap(true);
 		chatLog.setWrapStyleWord(false);
@@ -309,22 +324,64 @@ public class DecentChatGUI implements Display {
 		usernameField.setBackground(PRIMARY_COLOR);
 		scrollToBottom();
 	}
+	/**
+	 * Queues a line to be appended to the chat log. May be called from any thread, the lines queued since 
+	 * the last update are appended together on the event dispatch thread.
+	 */
 	public void display(String text) {
-		Font chatLogFont = chatLog.getFont();
-		String displayText = "";
-		//Ensure that the font the client is using can display a character
-		//This bug is related to emojis - which for some reason are not displayable by certain Swing fonts
+		//Filtered on the event dispatch thread, as the chat log's font may only be read there
+		pendingLines.add(text);
+		if(updateScheduled.compareAndSet(false, true)) {
+			SwingUtilities.invokeLater(this::appendPendingLines);
+		}
+	}
+	/**
+	 * Ensures that the font the client is using can display every character.
+	 * This bug is related to emojis - which for some reason are not displayable by certain Swing fonts
+	 */
+	private static String removeUndisplayable(String text, Font font) {
+		if(font.canDisplayUpTo(text) == -1) {
+			return text;
+		}
+		StringBuilder displayText = new StringBuilder(text.length());
 		for(char c: text.toCharArray()) {
-			if(chatLogFont.canDisplay(c)) {
-				displayText+=c;
+			if(font.canDisplay(c)) {
+				displayText.append(c);
 			}
 		}
+		return displayText.toString();
+	}
+	/**
+	 * Appends the queued lines to the end of the chat log's Document, and removes the oldest lines once there 
+	 * are more than the configured scrollback.
+	 */
+	private void appendPendingLines() {
+		updateScheduled.set(false);
+		Font font = chatLog.getFont();
+		StringBuilder lines = new StringBuilder();
+		String line = pendingLines.poll();
+		while(line != null) {
+			lines.append('\n').append(removeUndisplayable(line, font));
+			line = pendingLines.poll();
+		}
+		if(lines.length() == 0) {
+			return;
+		}
 		//If user is already at the lowest scroll, then we will autoscroll to any new line
 		boolean atBottom = isAtBottom();
-		chatLog.setText(chatLog.getText()+"\n"+displayText);
-		chatScrollPane.setViewportView(chatLog);
+		Document doc = chatLog.getDocument();
+		try {
+			doc.insertString(doc.getLength(), lines.toString(), null);
+			int excess = chatLog.getLineCount()-DecentConfig.getScrollbackLines();
+			if(excess > 0) {
+				doc.remove(0, chatLog.getLineEndOffset(excess-1));
+			}
+		}
+		catch(BadLocationException e) {
+			DecentLogger.write(DecentLogger.Level.ERROR, "Unable to update the chat log because of "+e.getMessage());
+		}
 		if(atBottom) {
-			scrollToBottom();
+			chatLog.setCaretPosition(doc.getLength());
 		}
 	}
 	/**
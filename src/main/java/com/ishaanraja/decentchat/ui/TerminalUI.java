@@ -7,14 +7,19 @@ import com.ishaanraja.decentchat.client.DecentChatClient;
 public class TerminalUI implements Display {
 	
 	private DecentChatClient client;
+	private ConsoleSink console;
 	
 	public TerminalUI() {
+		console = new ConsoleSink(System.out);
 		client = new DecentChatClient(this);
 		startMainThread();
 	}
 	
+	/**
+	 * Queues text to be printed to the console, without waiting for the console to keep up.
+	 */
 	public void display(String text) {
-		System.out.println(text);
+		console.println(text);
 	}
 	
 	private void startMainThread() {